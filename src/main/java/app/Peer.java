@@ -1,63 +1,63 @@
 package app;
 
+import app.dto.ChunkId;
 import app.dto.FileDTO;
+import app.dto.FileId;
 import app.dto.PeerDTO;
+import app.manager.ChunkAvailability;
+import app.util.ChunkBitmap;
+import app.util.ChunkIdArray;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Peer {
     private final String ip;
     private final int port;
-    private final HashMap<String, String[]> ownedChunks;
-    private final HashSet<PeerDTO> peers;
-    private final HashMap<String, FileDTO> files;
-    private final HashMap<String, FileDTO> uploadedFiles;
-    private final HashMap<String, FileDTO> downloadedFiles;
+    private final ConcurrentHashMap<FileId, ChunkIdArray> ownedChunks; // each ChunkIdArray guards its own chunks
+    private final Set<PeerDTO> peers;
+    private final ConcurrentHashMap<FileId, FileDTO> files;
+    private final ConcurrentHashMap<FileId, FileDTO> uploadedFiles;
+    private final ConcurrentHashMap<FileId, FileDTO> downloadedFiles;
 
     public Peer(String ip, int port) {
         this.ip = ip;
         this.port = port;
-        this.ownedChunks = new HashMap<>();
-        this.peers = new HashSet<>();
-        this.files = new HashMap<>();
-        this.uploadedFiles = new HashMap<>();
-        this.downloadedFiles = new HashMap<>();
+        this.ownedChunks = new ConcurrentHashMap<>();
+        this.peers = ConcurrentHashMap.newKeySet();
+        this.files = new ConcurrentHashMap<>();
+        this.uploadedFiles = new ConcurrentHashMap<>();
+        this.downloadedFiles = new ConcurrentHashMap<>();
     }
 
-    public void addOwnedChunk(String fileHash, String chunkHash, int chunkIndex) {
-        ownedChunks.get(fileHash)[chunkIndex] = chunkHash;
+    public void addOwnedChunk(FileId fileHash, ChunkId chunkHash, int chunkIndex) {
+        ChunkIdArray chunks = ownedChunks.get(fileHash);
+        if (chunks != null) {
+            chunks.set(chunkIndex, chunkHash);
+        }
     }
 
-    public void removeOwnedChunk(String fileHash, int chunkIndex) {
-        ownedChunks.get(fileHash)[chunkIndex] = "";
+    public void removeOwnedChunk(FileId fileHash, int chunkIndex) {
+        ownedChunks.computeIfPresent(fileHash, (_, chunks) -> {
+            chunks.clear(chunkIndex);
+            return chunks.isEmpty() ? null : chunks;
+        });
+    }
 
-        for(String chunk : ownedChunks.get(fileHash)) {
-            if(!chunk.isEmpty()) {
-                return;
-            }
-        }
-        ownedChunks.remove(fileHash);
+    public boolean hasChunk(FileId fileHash, int chunkIndex) {
+        ChunkIdArray chunks = ownedChunks.get(fileHash);
+        return chunks != null && chunks.has(chunkIndex);
     }
 
-    public boolean hasChunk(String fileHash, int chunkIndex) {
-        if (!ownedChunks.containsKey(fileHash)) {
-            return false;
-        }
-        return !ownedChunks.get(fileHash)[chunkIndex].isEmpty();
+    public int getDownloadedChunkCountForFile(FileId fileHash) {
+        ChunkIdArray chunks = ownedChunks.get(fileHash);
+        return chunks == null ? 0 : chunks.count();
     }
 
-    public int getDownloadedChunkCountForFile(String fileHash) {
-        if (!ownedChunks.containsKey(fileHash)) {
-            return 0;
-        }
-        int count = 0;
-        for (String chunk : ownedChunks.get(fileHash)) {
-            if (!chunk.isEmpty()) {
-                count++;
-            }
-        }
-        return count;
+    public ChunkBitmap getChunkBitmap(FileId fileHash) {
+        ChunkIdArray chunks = ownedChunks.get(fileHash);
+        return chunks == null ? null : chunks.bitmap();
     }
 
     public void addPeer(PeerDTO peer) {
@@ -66,33 +66,34 @@ public class Peer {
 
     public void removePeer(PeerDTO peer) {
         peers.remove(peer);
+        ChunkAvailability.getInstance().removePeer(peer);
     }
 
     public boolean hasPeer(PeerDTO peer) {
         return peers.contains(peer);
     }
 
-    public void addFiles(String hash, FileDTO fileDTO) {
+    public void addFiles(FileId hash, FileDTO fileDTO) {
         files.put(hash, fileDTO);
     }
 
-    public void removeFiles(String hash) {
+    public void removeFiles(FileId hash) {
         files.remove(hash);
     }
 
-    public void addUploadedFiles(String hash, FileDTO fileDTO) {
+    public void addUploadedFiles(FileId hash, FileDTO fileDTO) {
         uploadedFiles.put(hash, fileDTO);
     }
 
-    public void removeUploadedFiles(String hash) {
+    public void removeUploadedFiles(FileId hash) {
         uploadedFiles.remove(hash);
     }
 
-    public void addDownloadedFiles(String hash, FileDTO fileDTO) {
+    public void addDownloadedFiles(FileId hash, FileDTO fileDTO) {
         downloadedFiles.put(hash, fileDTO);
     }
 
-    public void removeDownloadedFiles(String hash) {
+    public void removeDownloadedFiles(FileId hash) {
         downloadedFiles.remove(hash);
     }
 
@@ -104,30 +105,47 @@ public class Peer {
         return port;
     }
 
-    public HashMap<String, String[]> getOwnedChunks() {
+    public ConcurrentHashMap<FileId, ChunkIdArray> getOwnedChunks() {
         return ownedChunks;
     }
 
-    public String getChunkHash(String fileHash, int chunkIndex) {
-        return ownedChunks.get(fileHash)[chunkIndex];
+    public ChunkId getChunkHash(FileId fileHash, int chunkIndex) {
+        ChunkIdArray chunks = ownedChunks.get(fileHash);
+        return chunks == null ? null : chunks.get(chunkIndex);
     }
 
-    public HashSet<PeerDTO> getPeers() {
+    public Set<PeerDTO> getPeers() {
         return peers;
     }
 
-    public HashMap<String, FileDTO> getFiles() {
+    public ConcurrentHashMap<FileId, FileDTO> getFiles() {
         return files;
     }
 
-    public HashMap<String, FileDTO> getUploadedFiles() {
+    public ConcurrentHashMap<FileId, FileDTO> getUploadedFiles() {
         return uploadedFiles;
     }
 
-    public HashMap<String, FileDTO> getDownloadedFiles() {
+    public ConcurrentHashMap<FileId, FileDTO> getDownloadedFiles() {
         return downloadedFiles;
     }
 
+    public Set<PeerDTO> getPeersSnapshot() {
+        return Set.copyOf(peers);
+    }
+
+    public Map<FileId, FileDTO> getFilesSnapshot() {
+        return Map.copyOf(files);
+    }
+
+    public Map<FileId, FileDTO> getUploadedFilesSnapshot() {
+        return Map.copyOf(uploadedFiles);
+    }
+
+    public Map<FileId, FileDTO> getDownloadedFilesSnapshot() {
+        return Map.copyOf(downloadedFiles);
+    }
+
     public String toString() {
         return ip + ":" + port;
     }
@@ -1,9 +1,14 @@
 package app;
 
 import app.dto.FileDTO;
+import app.dto.FileId;
+import app.manager.BandwidthManager;
+import app.manager.DownloadJournal;
 import app.manager.DownloadManager;
+import app.manager.ExecutorManager;
 import app.manager.FileManager;
 import app.manager.NetworkManager;
+import app.util.ChunkIdArray;
 
 import javax.swing.*;
 import java.awt.*;
@@ -11,8 +16,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 public class Screen extends JFrame {
@@ -71,12 +75,18 @@ public class Screen extends JFrame {
         menuFiles.addSeparator();
         menuFiles.add(menuItemExit);
 
+        JMenu menuSettings = new JMenu("Settings");
+        JMenuItem menuItemBandwidth = new JMenuItem("Bandwidth Limits");
+
+        menuSettings.add(menuItemBandwidth);
+
         JMenu menuHelp = new JMenu("Help");
         JMenuItem menuItemAbout = new JMenuItem("About");
 
         menuHelp.add(menuItemAbout);
 
         menuBar.add(menuFiles);
+        menuBar.add(menuSettings);
         menuBar.add(menuHelp);
 
         setJMenuBar(menuBar);
@@ -94,11 +104,45 @@ public class Screen extends JFrame {
             System.exit(0);
         });
 
+        menuItemBandwidth.addActionListener(e -> showBandwidthDialog());
+
         menuItemAbout.addActionListener(e -> {
             JOptionPane.showMessageDialog(this, "P2P File Sharing Application\n\nOkan Bulgur\n20200702017", "About", JOptionPane.INFORMATION_MESSAGE);
         });
     }
 
+    private void showBandwidthDialog() {
+        BandwidthManager bandwidthManager = BandwidthManager.getInstance();
+
+        JTextField txtUpload = new JTextField(String.valueOf(bandwidthManager.getUploadRate() / 1024));
+        JTextField txtDownload = new JTextField(String.valueOf(bandwidthManager.getDownloadRate() / 1024));
+        JTextField txtPeerUpload = new JTextField(String.valueOf(bandwidthManager.getPeerUploadRate() / 1024));
+        JTextField txtPeerDownload = new JTextField(String.valueOf(bandwidthManager.getPeerDownloadRate() / 1024));
+
+        JPanel bandwidthPanel = new JPanel(new GridLayout(0, 2, 5, 5));
+        bandwidthPanel.add(new JLabel("Upload (KB/s, 0 = unlimited)"));
+        bandwidthPanel.add(txtUpload);
+        bandwidthPanel.add(new JLabel("Download (KB/s, 0 = unlimited)"));
+        bandwidthPanel.add(txtDownload);
+        bandwidthPanel.add(new JLabel("Upload per peer (KB/s)"));
+        bandwidthPanel.add(txtPeerUpload);
+        bandwidthPanel.add(new JLabel("Download per peer (KB/s)"));
+        bandwidthPanel.add(txtPeerDownload);
+
+        if (JOptionPane.showConfirmDialog(this, bandwidthPanel, "Bandwidth Limits", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        try {
+            bandwidthManager.setUploadRate(Long.parseLong(txtUpload.getText().trim()) * 1024);
+            bandwidthManager.setDownloadRate(Long.parseLong(txtDownload.getText().trim()) * 1024);
+            bandwidthManager.setPeerUploadRate(Long.parseLong(txtPeerUpload.getText().trim()) * 1024);
+            bandwidthManager.setPeerDownloadRate(Long.parseLong(txtPeerDownload.getText().trim()) * 1024);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Please enter whole numbers.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void setupMainPanel(){
         mainPanel = new JPanel(new GridBagLayout());
 
@@ -248,6 +292,7 @@ public class Screen extends JFrame {
             if (index != -1) {
                 FileManager.getInstance().announceExcludeFolder(new File(model.get(index)), false);
                 model.remove(index);
+                FileManager.getInstance().refreshShareFilter();
             }
         });
     }
@@ -276,13 +321,13 @@ public class Screen extends JFrame {
 
             DefaultListModel<String> model = (DefaultListModel<String>) excludeMasksList.getModel();
             model.addElement(mask);
+            FileManager.getInstance().refreshShareFilter();
 
             mask = mask.replace(".", "\\.").replace("*", ".*");
-            for (FileDTO file : NetworkManager.getInstance().getPeer().getUploadedFiles().values()){
+            for (FileDTO file : NetworkManager.getInstance().getPeer().getUploadedFilesSnapshot().values()){
                 if (Pattern.matches(mask, file.filename())){
                     try {
-                        String notify = "event=ENTRY_DELETE:filename=" + file.filename() + ":fileType=" + file.fileType() + ":fileSize=" + file.fileSize() + ":chunkCount=" + file.chunkCount() + ":hash=" + file.hash() + ":ip=" + NetworkManager.getInstance().getPeer().getIp() + ":port=" + NetworkManager.getInstance().getPeer().getPort();
-                        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(notify);
+                        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification("ENTRY_DELETE", file);
                     } catch (IOException ex) {
                         throw new RuntimeException(ex);
                     }
@@ -298,11 +343,10 @@ public class Screen extends JFrame {
             String mask = model.getElementAt(index);
             mask = mask.replace(".", "\\.").replace("*", ".*");
 
-            for (FileDTO file : NetworkManager.getInstance().getPeer().getUploadedFiles().values()){
+            for (FileDTO file : NetworkManager.getInstance().getPeer().getUploadedFilesSnapshot().values()){
                 if (Pattern.matches(mask, file.filename())){
                     try {
-                        String notify = "event=ENTRY_CREATE:filename=" + file.filename() + ":fileType=" + file.fileType() + ":fileSize=" + file.fileSize() + ":chunkCount=" + file.chunkCount() + ":hash=" + file.hash() + ":ip=" + NetworkManager.getInstance().getPeer().getIp() + ":port=" + NetworkManager.getInstance().getPeer().getPort();
-                        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(notify);
+                        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification("ENTRY_CREATE", file);
                     } catch (IOException ex) {
                         throw new RuntimeException(ex);
                     }
@@ -311,6 +355,7 @@ public class Screen extends JFrame {
 
             if (index != -1) {
                 model.remove(index);
+                FileManager.getInstance().refreshShareFilter();
             }
 
         });
@@ -391,9 +436,9 @@ public class Screen extends JFrame {
     }
 
     private void updateDownloadingFilesList() {
-        HashMap<String, FileDTO> downloadedFiles = NetworkManager.getInstance().getPeer().getDownloadedFiles();
+        Map<FileId, FileDTO> downloadedFiles = NetworkManager.getInstance().getPeer().getDownloadedFilesSnapshot();
 
-        for (String file : downloadedFiles.keySet()) {
+        for (FileId file : downloadedFiles.keySet()) {
             if (!downloadFilesModel.contains(downloadedFiles.get(file))) {
                 System.out.println("\nAdding file: " + downloadedFiles.get(file));
                 downloadFilesModel.addElement(downloadedFiles.get(file));
@@ -454,9 +499,9 @@ public class Screen extends JFrame {
     }
 
     private void updateFoundFilesList() {
-        HashMap<String, FileDTO> peerFiles = NetworkManager.getInstance().getPeer().getFiles();
+        Map<FileId, FileDTO> peerFiles = NetworkManager.getInstance().getPeer().getFilesSnapshot();
 
-        for (String file : peerFiles.keySet()) {
+        for (FileId file : peerFiles.keySet()) {
             if (!foundFilesModel.contains(peerFiles.get(file))) {
                 System.out.println("Adding file: " + peerFiles.get(file));
                 foundFilesModel.addElement(peerFiles.get(file));
@@ -491,12 +536,11 @@ public class Screen extends JFrame {
                     if (index >= 0) {
                         FileDTO selectedFile = foundFilesList.getModel().getElementAt(index);
 
-                        if(!NetworkManager.getInstance().getPeer().getOwnedChunks().containsKey(selectedFile.hash())) {
-                            String[] chunks = new String[selectedFile.chunkCount()];
-                            Arrays.fill(chunks, "");
-                            NetworkManager.getInstance().getPeer().getOwnedChunks().put(selectedFile.hash(), chunks);
+                        boolean isNewDownload = NetworkManager.getInstance().getPeer().getOwnedChunks().putIfAbsent(selectedFile.hash(), new ChunkIdArray(selectedFile.chunkCount())) == null;
+                        if (!isNewDownload && DownloadJournal.getInstance().resume(selectedFile.hash())) {
+                            System.out.println("Resuming download for file: " + selectedFile);
                         }
-                        else {
+                        else if (!isNewDownload) {
                             System.out.println("Chunks already exist for file: " + selectedFile);
                             return;
                         }
@@ -516,7 +560,7 @@ public class Screen extends JFrame {
                         progressDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
                         SwingUtilities.invokeLater(() -> progressDialog.setVisible(true));
 
-                        Thread downloadThread = new Thread(() -> {
+                        ExecutorManager.getInstance().startThread("download-" + selectedFile.filename(), () -> {
                             try {
                                 DownloadManager.getInstance().downloadFile(selectedFile);
                             } catch (IOException ex) {
@@ -524,10 +568,7 @@ public class Screen extends JFrame {
                             }
                         });
 
-                        Thread progressThread = new Thread(() -> updateProgressBar(selectedFile, progressDialog, downloadProgressBar));
-
-                        downloadThread.start();
-                        progressThread.start();
+                        ExecutorManager.getInstance().startThread("progress-" + selectedFile.filename(), () -> updateProgressBar(selectedFile, progressDialog, downloadProgressBar));
                     }
                 }
             }
@@ -0,0 +1,10 @@
+package app.dht;
+
+import app.dto.PeerDTO;
+
+public record Contact(NodeId id, PeerDTO peer) {
+
+    public String toString() {
+        return peer + "/" + id.toString().substring(0, 8);
+    }
+}
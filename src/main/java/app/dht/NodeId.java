@@ -0,0 +1,53 @@
+package app.dht;
+
+import app.dto.FileId;
+
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+public record NodeId(long h0, long h1, long h2, long h3) { // 256-bit id in the same key space as file hashes
+    public static final int BITS = 256;
+
+    public static NodeId random() {
+        SecureRandom random = new SecureRandom();
+        return new NodeId(random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+    }
+
+    public static NodeId of(FileId fileId) {
+        return new NodeId(fileId.h0(), fileId.h1(), fileId.h2(), fileId.h3());
+    }
+
+    public FileId toFileId() {
+        return new FileId(h0, h1, h2, h3);
+    }
+
+    public NodeId xor(NodeId other) {
+        return new NodeId(h0 ^ other.h0, h1 ^ other.h1, h2 ^ other.h2, h3 ^ other.h3);
+    }
+
+    public int bucketIndex(NodeId other) { // index of the highest differing bit, -1 for the same id
+        long[] distance = { h0 ^ other.h0, h1 ^ other.h1, h2 ^ other.h2, h3 ^ other.h3 };
+        for (int i = 0; i < distance.length; i++) {
+            if (distance[i] != 0) {
+                return BITS - 1 - (i * Long.SIZE + Long.numberOfLeadingZeros(distance[i]));
+            }
+        }
+        return -1;
+    }
+
+    public static Comparator<NodeId> byDistanceTo(NodeId target) {
+        return (a, b) -> {
+            int c = Long.compareUnsigned(a.h0 ^ target.h0, b.h0 ^ target.h0);
+            if (c == 0) c = Long.compareUnsigned(a.h1 ^ target.h1, b.h1 ^ target.h1);
+            if (c == 0) c = Long.compareUnsigned(a.h2 ^ target.h2, b.h2 ^ target.h2);
+            if (c == 0) c = Long.compareUnsigned(a.h3 ^ target.h3, b.h3 ^ target.h3);
+            return c;
+        };
+    }
+
+    public String toString() {
+        HexFormat hex = HexFormat.of();
+        return hex.toHexDigits(h0) + hex.toHexDigits(h1) + hex.toHexDigits(h2) + hex.toHexDigits(h3);
+    }
+}
@@ -0,0 +1,74 @@
+package app.dht;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class RoutingTable { // one k-bucket per distance bit, least recently seen contact first, a full bucket only evicts contacts that stopped answering
+    public static final int K = 16;
+    static final int MAX_FAILURES = 2;
+
+    private final NodeId self;
+    private final List<LinkedList<Contact>> buckets;
+    private final Map<NodeId, Integer> failures;
+
+    public RoutingTable(NodeId self) {
+        this.self = self;
+        this.buckets = new ArrayList<>(NodeId.BITS);
+        for (int i = 0; i < NodeId.BITS; i++) {
+            buckets.add(new LinkedList<>());
+        }
+        this.failures = new HashMap<>();
+    }
+
+    public synchronized void seen(Contact contact) {
+        int index = self.bucketIndex(contact.id());
+        if (index < 0) {
+            return;
+        }
+
+        LinkedList<Contact> bucket = buckets.get(index);
+        failures.remove(contact.id());
+        bucket.removeIf(c -> c.id().equals(contact.id()));
+
+        if (bucket.size() >= K) {
+            Contact oldest = bucket.getFirst();
+            if (!failures.containsKey(oldest.id())) {
+                return;
+            }
+            bucket.removeFirst();
+            failures.remove(oldest.id());
+        }
+        bucket.addLast(contact);
+    }
+
+    public synchronized void failed(Contact contact) {
+        int count = failures.merge(contact.id(), 1, Integer::sum);
+        if (count >= MAX_FAILURES) {
+            int index = self.bucketIndex(contact.id());
+            if (index >= 0) {
+                buckets.get(index).removeIf(c -> c.id().equals(contact.id()));
+            }
+            failures.remove(contact.id());
+        }
+    }
+
+    public synchronized List<Contact> closest(NodeId target, int count) {
+        List<Contact> contacts = new ArrayList<>();
+        for (LinkedList<Contact> bucket : buckets) {
+            contacts.addAll(bucket);
+        }
+        contacts.sort((a, b) -> NodeId.byDistanceTo(target).compare(a.id(), b.id()));
+        return new ArrayList<>(contacts.subList(0, Math.min(count, contacts.size())));
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (LinkedList<Contact> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
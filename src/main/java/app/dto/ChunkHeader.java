@@ -0,0 +1,8 @@
+package app.dto;
+
+public record ChunkHeader(String type, FileId fileHash, int index, ChunkId chunkHash, int chunkSize, byte codec, int rawSize, byte checksumType, long checksum, byte[] proof) {
+
+    public String toString() {
+        return type + " (" + fileHash + ", " + index + ", " + chunkHash + ", " + chunkSize + ", codec=" + codec + ", raw=" + rawSize + ")";
+    }
+}
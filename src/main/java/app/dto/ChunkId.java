@@ -0,0 +1,44 @@
+package app.dto;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+
+public record ChunkId(long h0, long h1, long h2, long h3) {
+    public static final int BYTES = 32;
+
+    public static ChunkId of(byte[] digest) {
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        return new ChunkId(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    public static ChunkId fromHex(String hex) {
+        return new ChunkId(HexFormat.fromHexDigitsToLong(hex, 0, 16), HexFormat.fromHexDigitsToLong(hex, 16, 32), HexFormat.fromHexDigitsToLong(hex, 32, 48), HexFormat.fromHexDigitsToLong(hex, 48, 64));
+    }
+
+    public static ChunkId read(DataInput in) throws IOException {
+        return new ChunkId(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(h0);
+        out.writeLong(h1);
+        out.writeLong(h2);
+        out.writeLong(h3);
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(h0).putLong(h1).putLong(h2).putLong(h3).array();
+    }
+
+    public String toHex() {
+        HexFormat hex = HexFormat.of();
+        return hex.toHexDigits(h0) + hex.toHexDigits(h1) + hex.toHexDigits(h2) + hex.toHexDigits(h3);
+    }
+
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,10 @@
+package app.dto;
+
+import java.io.File;
+
+public record ChunkRegion(File file, long position, int length) {
+
+    public String toString() {
+        return file.getName() + " [" + position + ", " + (position + length) + ")";
+    }
+}
@@ -2,7 +2,7 @@ package app.dto;
 
 import java.util.Objects;
 
-public record FileDTO(String filename, String fileType, long fileSize, int chunkCount, String hash, PeerDTO owner, String filePath) {
+public record FileDTO(String filename, String fileType, long fileSize, int chunkSize, int chunkCount, FileId hash, PeerDTO owner, String filePath, String merkleRoot) {
 
     public String toString() {
         double sizeInKB = fileSize / 1024.0;
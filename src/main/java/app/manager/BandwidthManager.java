@@ -0,0 +1,114 @@
+package app.manager;
+
+import app.util.TokenBucket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class BandwidthManager {
+    private static BandwidthManager instance;
+
+    private final TokenBucket uploadBucket;
+    private final TokenBucket downloadBucket;
+    private final ConcurrentHashMap<String, TokenBucket> peerUploadBuckets;
+    private final ConcurrentHashMap<String, TokenBucket> peerDownloadBuckets;
+    private volatile long peerUploadRate;
+    private volatile long peerDownloadRate;
+
+    final long BUCKET_EXPIRY = 60_000;
+
+    public static synchronized BandwidthManager getInstance() {
+        if (instance == null) {
+            instance = new BandwidthManager();
+            ExecutorManager.getInstance().getScheduler().scheduleAtFixedRate(instance::pruneIdleBuckets, instance.BUCKET_EXPIRY, instance.BUCKET_EXPIRY, TimeUnit.MILLISECONDS);
+        }
+        return instance;
+    }
+
+    public BandwidthManager() {
+        uploadBucket = new TokenBucket(ConfigManager.getInstance().getLong("p2p.rate.upload", 0));
+        downloadBucket = new TokenBucket(ConfigManager.getInstance().getLong("p2p.rate.download", 0));
+        peerUploadRate = ConfigManager.getInstance().getLong("p2p.rate.upload.peer", 0);
+        peerDownloadRate = ConfigManager.getInstance().getLong("p2p.rate.download.peer", 0);
+        peerUploadBuckets = new ConcurrentHashMap<>();
+        peerDownloadBuckets = new ConcurrentHashMap<>();
+    }
+
+    public void acquireUpload(String ip, int bytes) {
+        park(reserveUpload(ip, bytes));
+    }
+
+    public void acquireDownload(String ip, int bytes) {
+        park(reserveDownload(ip, bytes));
+    }
+
+    public long reserveUpload(String ip, int bytes) {
+        TokenBucket peerBucket = peerUploadBuckets.computeIfAbsent(ip, _ -> new TokenBucket(peerUploadRate));
+        return Math.max(uploadBucket.reserve(bytes), peerBucket.reserve(bytes));
+    }
+
+    public long reserveDownload(String ip, int bytes) {
+        TokenBucket peerBucket = peerDownloadBuckets.computeIfAbsent(ip, _ -> new TokenBucket(peerDownloadRate));
+        return Math.max(downloadBucket.reserve(bytes), peerBucket.reserve(bytes));
+    }
+
+    public void setUploadRate(long rate) {
+        uploadBucket.setRate(rate);
+    }
+
+    public void setDownloadRate(long rate) {
+        downloadBucket.setRate(rate);
+    }
+
+    public void setPeerUploadRate(long rate) {
+        peerUploadRate = rate;
+        peerUploadBuckets.values().forEach(bucket -> bucket.setRate(rate));
+    }
+
+    public void setPeerDownloadRate(long rate) {
+        peerDownloadRate = rate;
+        peerDownloadBuckets.values().forEach(bucket -> bucket.setRate(rate));
+    }
+
+    public long getUploadRate() {
+        return uploadBucket.getRate();
+    }
+
+    public long getDownloadRate() {
+        return downloadBucket.getRate();
+    }
+
+    public long getPeerUploadRate() {
+        return peerUploadRate;
+    }
+
+    public long getPeerDownloadRate() {
+        return peerDownloadRate;
+    }
+
+    public long getDownloadLimit() { // tightest download cap in bytes per second, 0 if unlimited
+        long global = getDownloadRate();
+        long peer = getPeerDownloadRate();
+        if (global == 0 || peer == 0) {
+            return Math.max(global, peer);
+        }
+        return Math.min(global, peer);
+    }
+
+    private void pruneIdleBuckets() { // per-peer buckets are created on first use, drop the ones for peers we stopped talking to
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(BUCKET_EXPIRY);
+        peerUploadBuckets.values().removeIf(bucket -> bucket.isIdle(idleNanos));
+        peerDownloadBuckets.values().removeIf(bucket -> bucket.isIdle(idleNanos));
+    }
+
+    private void park(long nanos) { // parkNanos may return early, keep parking until the reservation is due
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package app.manager;
+
+import app.dto.FileDTO;
+import app.dto.FileId;
+import app.dto.PeerDTO;
+import app.util.ChunkBitmap;
+import app.util.ChunkIdArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ChunkAvailability implements ChunkListener { // which remote peers hold which chunks of the files being downloaded, learned from BITFIELD and HAVE messages
+    private static ChunkAvailability instance;
+    private final ConcurrentHashMap<FileId, FileAvailability> files;
+    private final ConcurrentHashMap<FileId, ConcurrentHashMap<PeerDTO, Long>> subscribers; // peer -> time of its last BITFIELD_REQUEST
+
+    final long SUBSCRIPTION_TIMEOUT = ConfigManager.getInstance().getLong("p2p.bitfield.subscription", 300_000);
+
+    private static class FileAvailability {
+        final int[] counts;
+        final Map<PeerDTO, ChunkBitmap> holders = new HashMap<>();
+        final Map<PeerDTO, Long> lastSeen = new HashMap<>(); // holder -> time of its last BITFIELD or HAVE
+
+        FileAvailability(int chunkCount) {
+            counts = new int[chunkCount];
+        }
+
+        ChunkBitmap bitmap(PeerDTO peer) {
+            lastSeen.put(peer, System.currentTimeMillis());
+            return holders.computeIfAbsent(peer, _ -> new ChunkBitmap(counts.length));
+        }
+
+        void set(ChunkBitmap bitmap, int index) {
+            if (index >= 0 && index < counts.length && bitmap.set(index)) {
+                counts[index]++;
+            }
+        }
+
+        void remove(PeerDTO peer) {
+            lastSeen.remove(peer);
+            ChunkBitmap bitmap = holders.remove(peer);
+            if (bitmap == null) {
+                return;
+            }
+            for (int index = bitmap.nextSetBit(0); index >= 0; index = bitmap.nextSetBit(index + 1)) {
+                counts[index]--;
+            }
+        }
+
+        void prune(long timeout) { // holders keep their entry alive by answering the downloader's periodic BITFIELD_REQUEST
+            long now = System.currentTimeMillis();
+            List<PeerDTO> expired = lastSeen.entrySet().stream().filter(e -> now - e.getValue() > timeout).map(Map.Entry::getKey).toList();
+            expired.forEach(this::remove);
+        }
+    }
+
+    public static synchronized ChunkAvailability getInstance() {
+        if (instance == null) {
+            instance = new ChunkAvailability();
+            FileManager.getInstance().addChunkListener(instance);
+        }
+        return instance;
+    }
+
+    public ChunkAvailability() {
+        files = new ConcurrentHashMap<>();
+        subscribers = new ConcurrentHashMap<>();
+    }
+
+    public void track(FileDTO file) { // only tracked files accept availability, sized from our own metadata rather than the remote's chunk count
+        files.computeIfAbsent(file.hash(), _ -> new FileAvailability(file.chunkCount()));
+    }
+
+    public void bitfieldReceived(FileId fileHash, PeerDTO peer, int chunkCount, int fromIndex, byte[] bits) {
+        FileAvailability file = getFile(fileHash, chunkCount);
+        if (file == null) {
+            return;
+        }
+        synchronized (file) {
+            ChunkBitmap bitmap = file.bitmap(peer);
+            for (int i = 0; i < bits.length; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((bits[i] & (1 << bit)) != 0) {
+                        file.set(bitmap, fromIndex + i * 8 + bit);
+                    }
+                }
+            }
+        }
+    }
+
+    public void completeReceived(FileId fileHash, PeerDTO peer, int chunkCount) {
+        FileAvailability file = getFile(fileHash, chunkCount);
+        if (file == null) {
+            return;
+        }
+        synchronized (file) {
+            ChunkBitmap bitmap = file.bitmap(peer);
+            for (int index = bitmap.nextClearBit(0); index >= 0; index = bitmap.nextClearBit(index + 1)) {
+                file.set(bitmap, index);
+            }
+        }
+    }
+
+    public void haveReceived(FileId fileHash, PeerDTO peer, int chunkCount, int index) {
+        FileAvailability file = getFile(fileHash, chunkCount);
+        if (file == null) {
+            return;
+        }
+        synchronized (file) {
+            file.set(file.bitmap(peer), index);
+        }
+    }
+
+    public void forget(FileId fileHash) {
+        files.remove(fileHash);
+        subscribers.remove(fileHash);
+    }
+
+    public void removePeer(PeerDTO peer) {
+        for (FileAvailability file : files.values()) {
+            synchronized (file) {
+                file.remove(peer);
+            }
+        }
+        for (ConcurrentHashMap<PeerDTO, Long> peers : subscribers.values()) {
+            peers.remove(peer);
+        }
+    }
+
+    public void clear() {
+        files.clear();
+        subscribers.clear();
+    }
+
+    public int count(FileId fileHash, int index) {
+        FileAvailability file = files.get(fileHash);
+        if (file == null) {
+            return 0;
+        }
+        synchronized (file) {
+            return index < file.counts.length ? file.counts[index] : 0;
+        }
+    }
+
+    public boolean has(FileId fileHash, PeerDTO peer, int index) {
+        FileAvailability file = files.get(fileHash);
+        if (file == null) {
+            return false;
+        }
+        synchronized (file) {
+            ChunkBitmap bitmap = file.holders.get(peer);
+            return bitmap != null && bitmap.get(index);
+        }
+    }
+
+    public List<PeerDTO> getHolders(FileId fileHash, Iterable<Integer> indices) { // peers holding at least one of the given chunks
+        FileAvailability file = files.get(fileHash);
+        List<PeerDTO> holders = new ArrayList<>();
+        if (file == null) {
+            return holders;
+        }
+
+        synchronized (file) {
+            file.prune(SUBSCRIPTION_TIMEOUT);
+            for (Map.Entry<PeerDTO, ChunkBitmap> entry : file.holders.entrySet()) {
+                for (int index : indices) {
+                    if (entry.getValue().get(index)) {
+                        holders.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+        return holders;
+    }
+
+    public void subscribe(FileId fileHash, PeerDTO peer) { // lasts SUBSCRIPTION_TIMEOUT, downloaders renew it by asking for the bitfield again
+        subscribers.computeIfAbsent(fileHash, _ -> new ConcurrentHashMap<>()).put(peer, System.currentTimeMillis());
+    }
+
+    @Override
+    public void chunkSaved(FileId fileHash, int chunkIndex) {
+        Set<PeerDTO> peers = activeSubscribers(fileHash);
+        ChunkIdArray owned = NetworkManager.getInstance().getPeer().getOwnedChunks().get(fileHash);
+        if (peers.isEmpty() || owned == null) {
+            return;
+        }
+
+        try {
+            NetworkManager.getInstance().getUdpSocketHandler().sendHave(fileHash, owned.length(), chunkIndex, peers);
+        } catch (IOException e) {
+            System.err.println("Failed to announce chunk " + chunkIndex + " of " + fileHash + ": " + e.getMessage());
+        }
+    }
+
+    private Set<PeerDTO> activeSubscribers(FileId fileHash) {
+        ConcurrentHashMap<PeerDTO, Long> peers = subscribers.get(fileHash);
+        if (peers == null) {
+            return Set.of();
+        }
+
+        long now = System.currentTimeMillis();
+        peers.values().removeIf(time -> now - time > SUBSCRIPTION_TIMEOUT);
+        if (peers.isEmpty()) {
+            subscribers.remove(fileHash, peers);
+        }
+        return peers.keySet();
+    }
+
+    private FileAvailability getFile(FileId fileHash, int chunkCount) { // a mismatched count is a stale or bogus message, drop it
+        FileAvailability file = files.get(fileHash);
+        return file != null && file.counts.length == chunkCount ? file : null;
+    }
+}
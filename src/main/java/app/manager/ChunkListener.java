@@ -0,0 +1,8 @@
+package app.manager;
+
+import app.dto.FileId;
+
+public interface ChunkListener {
+
+    void chunkSaved(FileId fileHash, int chunkIndex);
+}
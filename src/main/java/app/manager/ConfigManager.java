@@ -0,0 +1,60 @@
+package app.manager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+public class ConfigManager {
+    private static ConfigManager instance;
+    private final Properties properties;
+
+    final String CONFIG_FILE = "p2p.properties";
+    final String PREFIX = "p2p.";
+
+    public static synchronized ConfigManager getInstance() {
+        if (instance == null) {
+            instance = new ConfigManager();
+        }
+        return instance;
+    }
+
+    public ConfigManager() {
+        properties = new Properties();
+
+        File configFile = new File(CONFIG_FILE);
+        if (configFile.isFile()) {
+            try (FileInputStream fis = new FileInputStream(configFile)) {
+                properties.load(fis);
+            } catch (IOException e) {
+                System.err.println("Failed to load " + CONFIG_FILE + ": " + e.getMessage());
+            }
+        }
+
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(PREFIX)) {
+                properties.setProperty(key, System.getProperty(key));
+            }
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+    }
+
+    public void set(String key, String value) {
+        properties.setProperty(key, value);
+    }
+}
@@ -0,0 +1,131 @@
+package app.manager;
+
+import app.dto.ChunkRegion;
+import app.socketHandler.PeerConnection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionManager {
+    private static ConnectionManager instance;
+    private final ConcurrentHashMap<String, PeerConnection> connections;
+    private final Set<PeerConnection> openConnections;
+    private final ConcurrentHashMap<String, CompletableFuture<PeerConnection>> connecting; // one connect per ip in flight, other callers wait on it
+
+    public static final long IDLE_TIMEOUT = 60_000;
+    public static final int SOCKET_BUFFER_SIZE = 1024 * 1024;
+    final int MAX_SEND_ATTEMPTS = 2;
+
+    public static synchronized ConnectionManager getInstance() {
+        if (instance == null) {
+            instance = new ConnectionManager();
+            ExecutorManager.getInstance().getScheduler().scheduleAtFixedRate(instance::closeIdleConnections, IDLE_TIMEOUT, IDLE_TIMEOUT / 4, TimeUnit.MILLISECONDS);
+        }
+        return instance;
+    }
+
+    public ConnectionManager() {
+        connections = new ConcurrentHashMap<>();
+        openConnections = ConcurrentHashMap.newKeySet();
+        connecting = new ConcurrentHashMap<>();
+    }
+
+    public void sendChunk(String ip, int port, ByteBuffer header, ChunkRegion region) throws IOException {
+        IOException lastError = null;
+
+        for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS; attempt++) {
+            PeerConnection connection = getConnection(ip, port);
+            try {
+                connection.writeChunk(header.duplicate(), region);
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("Connection to " + connection + " lost. Reconnecting...");
+                closeConnection(connection);
+            }
+        }
+
+        throw lastError;
+    }
+
+    public PeerConnection getConnection(String ip, int port) throws IOException {
+        PeerConnection connection = connections.get(ip);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+
+        CompletableFuture<PeerConnection> pending = new CompletableFuture<>();
+        CompletableFuture<PeerConnection> inFlight = connecting.putIfAbsent(ip, pending);
+        if (inFlight != null) {
+            return awaitConnection(ip, inFlight);
+        }
+
+        try {
+            connection = connections.get(ip);
+            if (connection == null || !connection.isOpen()) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(ip, port));
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, ConnectionManager.SOCKET_BUFFER_SIZE);
+
+                connection = new PeerConnection(ip, channel);
+                register(connection);
+
+                System.out.println("New TCP connection to " + connection);
+            }
+            pending.complete(connection);
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            connecting.remove(ip, pending);
+        }
+    }
+
+    private PeerConnection awaitConnection(String ip, CompletableFuture<PeerConnection> inFlight) throws IOException {
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException("Failed to connect to " + ip, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting to " + ip, e);
+        }
+    }
+
+    public void register(PeerConnection connection) {
+        openConnections.add(connection);
+        connections.merge(connection.getIp(), connection, (current, added) -> current.isOpen() ? current : added);
+
+        ExecutorManager.getInstance().startThread("tcp-connection-" + connection, () -> NetworkManager.getInstance().getTcpSocketHandler().processResponse(connection));
+    }
+
+    public void closeConnection(PeerConnection connection) {
+        openConnections.remove(connection);
+        connections.remove(connection.getIp(), connection);
+        connection.close();
+    }
+
+    public void closeAll() {
+        for (PeerConnection connection : openConnections) {
+            closeConnection(connection);
+        }
+    }
+
+    private void closeIdleConnections() {
+        for (PeerConnection connection : openConnections) {
+            if (connection.getIdleTime() > IDLE_TIMEOUT) {
+                System.out.println("Closing idle TCP connection: " + connection);
+                closeConnection(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package app.manager;
+
+import app.dht.Contact;
+import app.dht.NodeId;
+import app.dht.RoutingTable;
+import app.dto.FileId;
+import app.dto.PeerDTO;
+import app.socketHandler.WireCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DhtManager implements ChunkListener { // Kademlia over the UDP socket, maps file hashes to the peers holding the file or some of its chunks
+    final int ALPHA = 3;
+    final int MAX_VALUES = 32;
+    final long RPC_TIMEOUT = ConfigManager.getInstance().getLong("p2p.dht.timeout", 1_000);
+    final long REPUBLISH_INTERVAL = ConfigManager.getInstance().getLong("p2p.dht.republish", 600_000);
+    final long VALUE_EXPIRY = 2 * REPUBLISH_INTERVAL;
+    final long BOOTSTRAP_DELAY = 1_000;
+
+    private static DhtManager instance;
+    private final NodeId self;
+    private final RoutingTable routingTable;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, CompletableFuture<Reply>> pending;
+    private final ConcurrentHashMap<NodeId, ConcurrentHashMap<PeerDTO, Long>> values;
+    private final Set<FileId> announced;
+    private final AtomicLong rpcIds;
+    private volatile boolean started;
+
+    private record Reply(List<Contact> contacts, List<PeerDTO> holders) {}
+
+    public static synchronized DhtManager getInstance() {
+        if (instance == null) {
+            instance = new DhtManager();
+            FileManager.getInstance().addChunkListener(instance);
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return !ConfigManager.getInstance().getString("p2p.discovery", "flood").equalsIgnoreCase("flood");
+    }
+
+    public static boolean isFloodEnabled() {
+        return !ConfigManager.getInstance().getString("p2p.discovery", "flood").equalsIgnoreCase("dht");
+    }
+
+    public DhtManager() {
+        self = NodeId.random();
+        routingTable = new RoutingTable(self);
+        executor = ExecutorManager.getInstance().getExecutor("dht", 4);
+        pending = new ConcurrentHashMap<>();
+        values = new ConcurrentHashMap<>();
+        announced = ConcurrentHashMap.newKeySet();
+        rpcIds = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        ExecutorManager.getInstance().getScheduler().schedule(() -> executor.execute(this::bootstrap), BOOTSTRAP_DELAY, TimeUnit.MILLISECONDS);
+        ExecutorManager.getInstance().getScheduler().scheduleAtFixedRate(() -> executor.execute(this::republish), REPUBLISH_INTERVAL, REPUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void bootstrap() {
+        List<CompletableFuture<Reply>> pings = new ArrayList<>();
+        for (PeerDTO peer : NetworkManager.getInstance().getPeer().getPeersSnapshot()) {
+            pings.add(request(peer, WireCodec.encodeDht(WireCodec.buffer(), WireCodec.DHT_PING, nextRpcId(), self)));
+        }
+        CompletableFuture.allOf(pings.toArray(CompletableFuture[]::new)).join();
+
+        lookup(self, false, new HashSet<>());
+        System.out.println("DHT bootstrapped with " + routingTable.size() + " contacts, node id: " + self);
+        republish();
+    }
+
+    public CompletableFuture<List<PeerDTO>> findHolders(FileId fileHash) {
+        return CompletableFuture.supplyAsync(() -> {
+            Set<PeerDTO> holders = new LinkedHashSet<>(getValues(NodeId.of(fileHash)));
+            lookup(NodeId.of(fileHash), true, holders);
+            holders.remove(selfPeer());
+            return new ArrayList<>(holders);
+        }, executor);
+    }
+
+    public void announce(FileId fileHash) {
+        announced.add(fileHash);
+        executor.execute(() -> {
+            NodeId key = NodeId.of(fileHash);
+            storeValue(key, selfPeer());
+            for (Contact contact : lookup(key, false, new HashSet<>())) {
+                send(contact.peer(), WireCodec.encodeDhtKey(WireCodec.buffer(), WireCodec.DHT_STORE, nextRpcId(), self, key));
+            }
+        });
+    }
+
+    private void republish() {
+        long now = System.currentTimeMillis();
+        for (Map<PeerDTO, Long> holders : values.values()) {
+            holders.values().removeIf(time -> now - time > VALUE_EXPIRY);
+        }
+        values.values().removeIf(Map::isEmpty);
+
+        for (FileId fileHash : NetworkManager.getInstance().getPeer().getOwnedChunks().keySet()) {
+            announce(fileHash);
+        }
+    }
+
+    @Override
+    public void chunkSaved(FileId fileHash, int chunkIndex) {
+        if (started && !announced.contains(fileHash)) {
+            announce(fileHash);
+        }
+    }
+
+    public void handle(byte type, ByteBuffer in, PeerDTO sender) throws IOException {
+        long rpcId = in.getLong();
+        Contact contact = new Contact(WireCodec.readNodeId(in), sender);
+        routingTable.seen(contact);
+
+        switch (type) {
+            case WireCodec.DHT_PING -> send(sender, WireCodec.encodeDht(WireCodec.buffer(), WireCodec.DHT_PONG, rpcId, self));
+            case WireCodec.DHT_FIND_NODE -> send(sender, WireCodec.encodeDhtNodes(WireCodec.buffer(), rpcId, self, routingTable.closest(WireCodec.readNodeId(in), RoutingTable.K)));
+            case WireCodec.DHT_FIND_VALUE -> {
+                NodeId key = WireCodec.readNodeId(in);
+                List<PeerDTO> holders = getValues(key);
+                if (holders.isEmpty()) {
+                    send(sender, WireCodec.encodeDhtNodes(WireCodec.buffer(), rpcId, self, routingTable.closest(key, RoutingTable.K)));
+                }
+                else {
+                    send(sender, WireCodec.encodeDhtValues(WireCodec.buffer(), rpcId, self, holders));
+                }
+            }
+            case WireCodec.DHT_STORE -> {
+                storeValue(WireCodec.readNodeId(in), sender);
+                send(sender, WireCodec.encodeDht(WireCodec.buffer(), WireCodec.DHT_PONG, rpcId, self));
+            }
+            case WireCodec.DHT_PONG -> complete(rpcId, new Reply(List.of(), List.of()));
+            case WireCodec.DHT_NODES -> complete(rpcId, new Reply(WireCodec.readContacts(in), List.of()));
+            case WireCodec.DHT_VALUES -> complete(rpcId, new Reply(List.of(), WireCodec.readPeers(in)));
+            default -> System.err.println("Unknown DHT message type " + type + " from: " + sender);
+        }
+    }
+
+    private List<Contact> lookup(NodeId target, boolean findValue, Set<PeerDTO> found) { // iterative, ALPHA queries in flight until the K closest have all answered
+        Comparator<Contact> byDistance = Comparator.comparing(Contact::id, NodeId.byDistanceTo(target));
+        List<Contact> shortlist = routingTable.closest(target, RoutingTable.K);
+        Set<NodeId> queried = new HashSet<>();
+        List<Contact> answered = new ArrayList<>();
+
+        while (true) {
+            shortlist.sort(byDistance);
+            if (shortlist.size() > RoutingTable.K) {
+                shortlist.subList(RoutingTable.K, shortlist.size()).clear();
+            }
+
+            List<Contact> batch = shortlist.stream().filter(c -> !queried.contains(c.id())).limit(ALPHA).toList();
+            if (batch.isEmpty() || (findValue && !found.isEmpty())) {
+                break;
+            }
+
+            List<CompletableFuture<Reply>> replies = new ArrayList<>();
+            for (Contact contact : batch) {
+                queried.add(contact.id());
+                byte type = findValue ? WireCodec.DHT_FIND_VALUE : WireCodec.DHT_FIND_NODE;
+                replies.add(request(contact.peer(), WireCodec.encodeDhtKey(WireCodec.buffer(), type, nextRpcId(), self, target)));
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                Reply reply = replies.get(i).join();
+                if (reply == null) {
+                    routingTable.failed(batch.get(i));
+                    shortlist.remove(batch.get(i));
+                    continue;
+                }
+
+                answered.add(batch.get(i));
+                found.addAll(reply.holders());
+                for (Contact contact : reply.contacts()) {
+                    if (!contact.id().equals(self) && shortlist.stream().noneMatch(c -> c.id().equals(contact.id()))) {
+                        shortlist.add(contact);
+                    }
+                }
+            }
+        }
+
+        answered.sort(byDistance);
+        return answered.subList(0, Math.min(RoutingTable.K, answered.size()));
+    }
+
+    private CompletableFuture<Reply> request(PeerDTO target, ByteBuffer message) {
+        long rpcId = message.getLong(WireCodec.HEADER_LENGTH);
+        CompletableFuture<Reply> reply = new CompletableFuture<>();
+        pending.put(rpcId, reply);
+
+        NetworkManager.getInstance().getUdpSocketHandler().negotiateBinary(target, RPC_TIMEOUT).thenAccept(_ -> {
+            if (!send(target, message)) { // DHT messages only exist in the binary format, peers on the text protocol are never queried
+                reply.complete(null);
+            }
+        });
+        return reply.completeOnTimeout(null, RPC_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((_, _) -> pending.remove(rpcId));
+    }
+
+    private void complete(long rpcId, Reply reply) {
+        CompletableFuture<Reply> future = pending.remove(rpcId);
+        if (future != null) {
+            future.complete(reply);
+        }
+    }
+
+    private boolean send(PeerDTO target, ByteBuffer message) { // always hands the message back to the codec's buffer pool
+        if (!NetworkManager.getInstance().getUdpSocketHandler().speaksBinary(target)) {
+            WireCodec.release(message);
+            return false;
+        }
+        try {
+            NetworkManager.getInstance().getUdpSocketHandler().sendWirePacket(message, target);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to send DHT message to: " + target + " (" + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    private void storeValue(NodeId key, PeerDTO holder) {
+        values.computeIfAbsent(key, _ -> new ConcurrentHashMap<>()).put(holder, System.currentTimeMillis());
+    }
+
+    private List<PeerDTO> getValues(NodeId key) {
+        Map<PeerDTO, Long> holders = values.get(key);
+        if (holders == null) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        return holders.entrySet().stream()
+                .filter(e -> now - e.getValue() <= VALUE_EXPIRY)
+                .map(Map.Entry::getKey)
+                .limit(MAX_VALUES)
+                .toList();
+    }
+
+    private PeerDTO selfPeer() {
+        return new PeerDTO(NetworkManager.getInstance().getPeer().getIp(), NetworkManager.getInstance().getPeer().getPort());
+    }
+
+    private long nextRpcId() {
+        return rpcIds.incrementAndGet();
+    }
+}
@@ -0,0 +1,212 @@
+package app.manager;
+
+import app.dto.ChunkId;
+import app.dto.FileDTO;
+import app.dto.FileId;
+import app.dto.PeerDTO;
+import app.util.ChunkBitmap;
+import app.util.ChunkIdArray;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DownloadJournal implements ChunkListener { // [magic, version, file metadata][index, chunkHash, proofLength, proof]...
+    final int MAGIC = 0x50324a4e;
+    final int VERSION = 3;
+    protected final String JOURNAL_FOLDER = ".journal";
+    protected final String JOURNAL_EXTENSION = ".journal";
+
+    private static DownloadJournal instance;
+    private final ConcurrentHashMap<FileId, DataOutputStream> writers;
+    private final Set<FileId> resumable;
+
+    public record Entry(FileDTO file, ChunkIdArray chunkHashes, byte[][] proofs) {}
+
+    public static synchronized DownloadJournal getInstance() {
+        if (instance == null) {
+            instance = new DownloadJournal();
+            FileManager.getInstance().addChunkListener(instance);
+        }
+        return instance;
+    }
+
+    public DownloadJournal() {
+        writers = new ConcurrentHashMap<>();
+        resumable = ConcurrentHashMap.newKeySet();
+    }
+
+    public synchronized void begin(FileDTO file) throws IOException {
+        if (writers.containsKey(file.hash())) {
+            return;
+        }
+
+        File journalFile = getJournalFile(file.hash());
+        File dir = journalFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create journal directory: " + dir.getAbsolutePath());
+        }
+
+        File tmpFile = new File(journalFile.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            writeHeader(dos, file);
+
+            ChunkIdArray chunkHashes = NetworkManager.getInstance().getPeer().getOwnedChunks().get(file.hash());
+            if (chunkHashes != null) {
+                ChunkBitmap owned = chunkHashes.bitmap();
+                for (int i = owned.nextSetBit(0); i >= 0; i = owned.nextSetBit(i + 1)) {
+                    writeRecord(dos, i, chunkHashes.get(i), FileManager.getInstance().getChunkProof(file.hash(), i));
+                }
+            }
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        Files.move(tmpFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        writers.put(file.hash(), new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true))));
+        resumable.remove(file.hash());
+    }
+
+    @Override
+    public void chunkSaved(FileId fileHash, int chunkIndex) {
+        DataOutputStream dos = writers.get(fileHash);
+        if (dos == null) {
+            return;
+        }
+
+        try {
+            synchronized (dos) {
+                writeRecord(dos, chunkIndex, NetworkManager.getInstance().getPeer().getChunkHash(fileHash, chunkIndex), FileManager.getInstance().getChunkProof(fileHash, chunkIndex));
+                dos.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing journal for " + fileHash + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void suspend(FileDTO file) {
+        DataOutputStream dos = writers.remove(file.hash());
+        if (dos == null) {
+            return;
+        }
+
+        try {
+            dos.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal for " + file.hash() + ": " + e.getMessage());
+        }
+        resumable.add(file.hash());
+    }
+
+    public synchronized void complete(FileDTO file) {
+        suspend(file);
+        resumable.remove(file.hash());
+
+        File journalFile = getJournalFile(file.hash());
+        if (journalFile.exists() && !journalFile.delete()) {
+            System.err.println("Failed to delete journal: " + journalFile.getName());
+        }
+    }
+
+    public List<Entry> load() {
+        File dir = getJournalFolder();
+        File[] files = dir.listFiles((_, name) -> name.endsWith(JOURNAL_EXTENSION));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (File journalFile : files) {
+            try {
+                entries.add(read(journalFile));
+            } catch (IOException e) {
+                System.err.println("Discarding unreadable journal " + journalFile.getName() + ": " + e.getMessage());
+                journalFile.delete();
+            }
+        }
+        return entries;
+    }
+
+    public void markResumable(FileId fileHash) {
+        resumable.add(fileHash);
+    }
+
+    public boolean resume(FileId fileHash) {
+        return resumable.remove(fileHash);
+    }
+
+    private Entry read(File journalFile) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Invalid journal magic");
+            }
+            if (dis.readInt() != VERSION) {
+                throw new IOException("Unsupported journal version");
+            }
+
+            String filename = dis.readUTF();
+            String fileType = dis.readUTF();
+            long fileSize = dis.readLong();
+            int chunkSize = dis.readInt();
+            int chunkCount = dis.readInt();
+            FileId hash = FileId.read(dis);
+            PeerDTO owner = new PeerDTO(dis.readUTF(), dis.readInt());
+            String filePath = dis.readUTF();
+            String merkleRoot = dis.readUTF();
+
+            FileDTO file = new FileDTO(filename, fileType, fileSize, chunkSize, chunkCount, hash, owner, filePath.isEmpty() ? null : filePath, merkleRoot);
+            ChunkIdArray chunkHashes = new ChunkIdArray(chunkCount);
+            byte[][] proofs = new byte[chunkCount][];
+
+            try {
+                while (true) {
+                    int index = dis.readInt();
+                    ChunkId chunkHash = ChunkId.read(dis);
+                    byte[] proof = new byte[dis.readUnsignedShort()];
+                    dis.readFully(proof);
+                    if (index >= 0 && index < chunkCount) {
+                        chunkHashes.set(index, chunkHash);
+                        proofs[index] = proof;
+                    }
+                }
+            } catch (EOFException e) {
+                // end of journal, a torn last record is ignored
+            }
+
+            return new Entry(file, chunkHashes, proofs);
+        }
+    }
+
+    private void writeHeader(DataOutputStream dos, FileDTO file) throws IOException {
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeUTF(file.filename());
+        dos.writeUTF(file.fileType());
+        dos.writeLong(file.fileSize());
+        dos.writeInt(file.chunkSize());
+        dos.writeInt(file.chunkCount());
+        file.hash().write(dos);
+        dos.writeUTF(file.owner().ip());
+        dos.writeInt(file.owner().port());
+        dos.writeUTF(file.filePath() == null ? "" : file.filePath());
+        dos.writeUTF(file.merkleRoot());
+    }
+
+    private void writeRecord(DataOutputStream dos, int index, ChunkId chunkHash, byte[] proof) throws IOException {
+        dos.writeInt(index);
+        chunkHash.write(dos);
+        dos.writeShort(proof.length);
+        dos.write(proof);
+    }
+
+    private File getJournalFolder() {
+        return new File(FileManager.getInstance().getDestinationFolder(), JOURNAL_FOLDER);
+    }
+
+    private File getJournalFile(FileId fileHash) {
+        return new File(getJournalFolder(), fileHash + JOURNAL_EXTENSION);
+    }
+}
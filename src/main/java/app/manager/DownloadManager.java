@@ -1,97 +1,105 @@
 package app.manager;
 
 import app.dto.FileDTO;
+import app.dto.FileId;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.*;
 
-public class DownloadManager {
+public class DownloadManager implements ChunkListener {
     private static DownloadManager instance;
     private final ExecutorService downloadExecutor;
+    private final ConcurrentHashMap<ChunkKey, CompletableFuture<Void>> chunkFutures;
+
+    private record ChunkKey(FileId fileHash, int index) {}
 
     public static DownloadManager getInstance() {
         if(instance == null) {
             instance = new DownloadManager();
+            FileManager.getInstance().addChunkListener(instance);
         }
         return instance;
     }
 
     public DownloadManager() {
-        downloadExecutor = Executors.newFixedThreadPool(5);
+        downloadExecutor = ExecutorManager.getInstance().getExecutor("download", 5);
+        chunkFutures = new ConcurrentHashMap<>();
     }
 
     public void downloadFile(FileDTO file) throws IOException {
-        FileManager.getInstance().generateChunkFolder();
+        FileManager.getInstance().prepareDownload(file);
+        DownloadJournal.getInstance().begin(file);
+        ChunkAvailability.getInstance().track(file);
 
         System.out.println("\nDownloading file: " + file);
 
-        int totalChunks = file.chunkCount();
-
-        for(int i = 0; i < totalChunks; i++) {
-            int index = i;
-            if (NetworkManager.getInstance().getPeer().hasChunk(file.hash(), index)) {
-                System.out.println("\nChunk " + index + " already owned. Skipping...");
-                continue;
-            }
-            downloadExecutor.submit(() -> downloadChunk(file, index));
+        DownloadTask task = new DownloadTask(file, this);
+        try {
+            task.start().get();
+        } catch (InterruptedException | ExecutionException e) {
+            DownloadJournal.getInstance().suspend(file);
+            throw new IOException("Download interrupted for file: " + file.hash(), e);
+        } finally {
+            task.cancel();
+            ChunkAvailability.getInstance().forget(file.hash());
         }
 
-        for (int i = 0; i < totalChunks; i++) {
-            if (!NetworkManager.getInstance().getPeer().hasChunk(file.hash(), i)) {
-                System.err.println("Failed to download chunk " + i + " for file: " + file.hash());
-                downloadChunk(file, i);
-            }
+        List<Integer> failedChunks = task.getFailedChunks();
+        if (!failedChunks.isEmpty()) {
+            DownloadJournal.getInstance().suspend(file);
+            throw new IOException("Failed to download " + failedChunks.size() + " chunks for file: " + file.filename());
         }
 
         System.out.println("\nAll chunks downloaded for file: " + file);
 
         try {
-            FileManager.getInstance().mergeChunk(file.hash(), totalChunks);
+            FileManager.getInstance().completeDownload(file);
             NetworkManager.getInstance().getPeer().addDownloadedFiles(file.hash(), file);
-            deleteChunkFiles(file.hash());
+            DownloadJournal.getInstance().complete(file);
+            if (FileManager.getInstance().getStorageMode() == FileManager.StorageMode.CHUNK_FILES) {
+                deleteChunkFiles(file.hash());
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void downloadChunk(FileDTO file, int index) {
-        try {
-            int maxRetries = 3;
-            int retryDelay = 1000;
-            int timeout = 10000;
-
-            int attempts = 0;
+    CompletableFuture<Void> getChunkFuture(FileId fileHash, int index) {
+        ChunkKey key = new ChunkKey(fileHash, index);
+        CompletableFuture<Void> future = chunkFutures.computeIfAbsent(key, _ -> new CompletableFuture<>());
 
-            while (attempts < maxRetries) {
-                attempts++;
-                System.out.println("\nRequesting chunk " + index + " (Attempt " + attempts + ")");
-
-                NetworkManager.getInstance().getUdpSocketHandler().sendChunkRequest(file.hash(), index);
+        if (NetworkManager.getInstance().getPeer().hasChunk(fileHash, index)) {
+            chunkFutures.remove(key, future);
+            future.complete(null);
+        }
+        return future;
+    }
 
-                long startTime = System.currentTimeMillis();
-                while (System.currentTimeMillis() - startTime < timeout) {
-                    if (NetworkManager.getInstance().getPeer().hasChunk(file.hash(), index)) {
-                        return;
-                    }
-                    Thread.sleep(250);
-                }
+    @Override
+    public void chunkSaved(FileId fileHash, int chunkIndex) {
+        CompletableFuture<Void> future = chunkFutures.remove(new ChunkKey(fileHash, chunkIndex));
+        if (future != null) {
+            future.complete(null);
+        }
+    }
 
-                System.out.println("Chunk " + index + " not received. Retrying...");
-                Thread.sleep(retryDelay);
+    void cancelChunkFutures(FileId fileHash) {
+        chunkFutures.entrySet().removeIf(entry -> {
+            if (!entry.getKey().fileHash().equals(fileHash)) {
+                return false;
             }
+            entry.getValue().cancel(false);
+            return true;
+        });
+    }
 
-            System.err.println("Failed to receive chunk " + index + " after " + maxRetries + " attempts.");
-
-        } catch (IOException e) {
-            throw new RuntimeException("IO error while requesting chunk " + index, e);
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Thread interrupted while requesting chunk " + index, e);
-        }
-
+    Executor getExecutor() {
+        return downloadExecutor;
     }
 
-    private void deleteChunkFiles(String fileHash) {
+    private void deleteChunkFiles(FileId fileHash) {
         String dirPath = FileManager.getInstance().getDestinationFolder() + File.separator + FileManager.getInstance().CHUNK_FOLDER;
         File dir = new File(dirPath);
 
@@ -99,7 +107,7 @@ public class DownloadManager {
             return;
         }
 
-        File[] files = dir.listFiles((_, name) -> name.startsWith(fileHash));
+        File[] files = dir.listFiles((_, name) -> name.startsWith(fileHash.toHex()));
 
         if (files == null) {
             return;
@@ -111,5 +119,3 @@ public class DownloadManager {
 
     }
 }
-
-
@@ -0,0 +1,336 @@
+package app.manager;
+
+import app.dto.FileDTO;
+import app.dto.PeerDTO;
+import app.piece.PieceSelectionStrategy;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+
+class DownloadTask {
+    private final FileDTO file;
+    private final DownloadManager downloadManager;
+    private final PieceSelectionStrategy pieceSelection;
+    private final IntUnaryOperator availability;
+    private final Set<Integer> pendingChunks;
+    private final Map<Integer, Set<PeerDTO>> requestedFrom;
+    private final Map<Integer, Integer> attempts;
+    private final Map<Integer, Set<PeerDTO>> timedOutFrom;
+    private final List<Integer> failedChunks;
+    private final CompletableFuture<Void> completion;
+    private int inFlightWindows;
+    private boolean endgame;
+
+    final int WINDOW_SIZE = 64;
+    final int MAX_IN_FLIGHT_WINDOWS = 4;
+    final int MAX_RETRIES = 3;
+    final int RETRY_DELAY = 1000;
+    final int TIMEOUT = 10000;
+    final long MIN_TRANSFER_RATE = ConfigManager.getInstance().getLong("p2p.timeout.rate", 256 * 1024);
+    final int ENDGAME_CHUNKS = ConfigManager.getInstance().getInt("p2p.endgame.chunks", 8);
+    final int ENDGAME_DUPLICATES = ConfigManager.getInstance().getInt("p2p.endgame.duplicates", 2);
+    final int BITFIELD_WAIT = ConfigManager.getInstance().getInt("p2p.bitfield.wait", 300);
+    final long DHT_LOOKUP_TIMEOUT = ConfigManager.getInstance().getLong("p2p.dht.lookup.timeout", 5_000);
+
+    DownloadTask(FileDTO file, DownloadManager downloadManager) {
+        this.file = file;
+        this.downloadManager = downloadManager;
+        this.pieceSelection = PieceSelectionStrategy.fromName(ConfigManager.getInstance().getString("p2p.piece.strategy", "rarest-first"));
+        this.availability = index -> ChunkAvailability.getInstance().count(file.hash(), index);
+        this.pendingChunks = new LinkedHashSet<>();
+        this.requestedFrom = new HashMap<>();
+        this.attempts = new HashMap<>();
+        this.timedOutFrom = new HashMap<>();
+        this.failedChunks = new ArrayList<>();
+        this.completion = new CompletableFuture<>();
+    }
+
+    CompletableFuture<Void> start() {
+        synchronized (this) {
+            for (int i = 0; i < file.chunkCount(); i++) {
+                if (NetworkManager.getInstance().getPeer().hasChunk(file.hash(), i)) {
+                    System.out.println("\nChunk " + i + " already owned. Skipping...");
+                    continue;
+                }
+                pendingChunks.add(i);
+            }
+        }
+
+        findSources().thenAccept(sources -> {
+            requestBitfields(sources);
+            long renewal = ChunkAvailability.getInstance().SUBSCRIPTION_TIMEOUT / 2;
+            ScheduledFuture<?> renewBitfields = ExecutorManager.getInstance().getScheduler().scheduleAtFixedRate(() -> requestBitfields(sources), renewal, renewal, TimeUnit.MILLISECONDS);
+            completion.whenComplete((_, _) -> renewBitfields.cancel(false));
+
+            Executor delayed = CompletableFuture.delayedExecutor(BITFIELD_WAIT, TimeUnit.MILLISECONDS, downloadManager.getExecutor());
+            for (int i = 0; i < MAX_IN_FLIGHT_WINDOWS; i++) {
+                delayed.execute(this::requestNextWindow);
+            }
+        });
+        return completion;
+    }
+
+    void cancel() { // in-flight windows see their chunk futures cancelled and stop retrying
+        completion.cancel(false);
+        downloadManager.cancelChunkFutures(file.hash());
+    }
+
+    private void requestBitfields(Collection<PeerDTO> sources) { // also renews our HAVE subscription with each source
+        try {
+            NetworkManager.getInstance().getUdpSocketHandler().sendBitfieldRequest(file.hash(), sources);
+        } catch (IOException e) {
+            System.err.println("Failed to request bitfields for file: " + file + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private CompletableFuture<Collection<PeerDTO>> findSources() {
+        Set<PeerDTO> sources = new LinkedHashSet<>();
+        if (DhtManager.isFloodEnabled()) {
+            sources.addAll(NetworkManager.getInstance().getPeer().getPeersSnapshot());
+        }
+        if (!DhtManager.isEnabled()) {
+            return CompletableFuture.completedFuture(sources);
+        }
+
+        return DhtManager.getInstance().findHolders(file.hash())
+                .completeOnTimeout(List.of(), DHT_LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .thenApply(holders -> {
+                    System.out.println("DHT found " + holders.size() + " holders for file: " + file.filename());
+                    for (PeerDTO holder : holders) {
+                        NetworkManager.getInstance().getPeer().addPeer(holder);
+                        sources.add(holder);
+                    }
+                    return sources;
+                });
+    }
+
+    private void requestNextWindow() {
+        List<Integer> window;
+        PeerDTO target;
+
+        synchronized (this) {
+            if (completion.isDone()) {
+                return;
+            }
+            pendingChunks.removeIf(index -> NetworkManager.getInstance().getPeer().hasChunk(file.hash(), index));
+
+            if (pendingChunks.isEmpty()) {
+                if (inFlightWindows == 0) {
+                    completion.complete(null);
+                }
+                else if (!endgame && requestedFrom.size() <= ENDGAME_CHUNKS) {
+                    endgame = true;
+                    startEndgame();
+                }
+                return;
+            }
+
+            Set<PeerDTO> excluded = timedOutPeers();
+            List<PeerDTO> holders = new ArrayList<>(ChunkAvailability.getInstance().getHolders(file.hash(), pendingChunks));
+            holders.removeAll(excluded);
+            if (holders.isEmpty()) {
+                window = pieceSelection.select(pendingChunks, WINDOW_SIZE, availability);
+                PeerDTO untried = selectPeer(excluded);
+                target = untried != null ? untried : selectPeer(Set.of());
+            }
+            else {
+                PeerDTO holder = PeerScoreManager.getInstance().selectPeer(holders);
+                List<Integer> held = pendingChunks.stream().filter(index -> ChunkAvailability.getInstance().has(file.hash(), holder, index)).toList();
+                window = pieceSelection.select(held, WINDOW_SIZE, availability);
+                target = holder;
+            }
+            pendingChunks.removeAll(window);
+            inFlightWindows++;
+
+            for (int index : window) {
+                Set<PeerDTO> askedPeers = requestedFrom.computeIfAbsent(index, _ -> new HashSet<>());
+                if (target != null) {
+                    askedPeers.add(target);
+                }
+            }
+        }
+
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+        CompletableFuture<?>[] chunkFutures = new CompletableFuture<?>[window.size()];
+        for (int i = 0; i < window.size(); i++) {
+            int index = window.get(i);
+            chunkFutures[i] = downloadManager.getChunkFuture(file.hash(), index);
+            chunkFutures[i].thenRunAsync(() -> {
+                lastProgress.set(System.currentTimeMillis());
+                chunkReceived(index);
+            }, downloadManager.getExecutor());
+        }
+
+        if (completion.isDone()) { // cancelled while the window was being set up
+            downloadManager.cancelChunkFutures(file.hash());
+            return;
+        }
+
+        System.out.println("\nRequesting " + window.size() + " chunks from " + target);
+        sendRequest(window, target);
+
+        CompletableFuture<Void> windowDone = CompletableFuture.allOf(chunkFutures);
+        scheduleDeadline(windowDone, lastProgress, chunkTimeout());
+        windowDone.whenCompleteAsync((_, error) -> windowCompleted(window, target, error != null), downloadManager.getExecutor());
+    }
+
+    private void scheduleDeadline(CompletableFuture<Void> windowDone, AtomicLong lastProgress, long delay) { // the window times out only after a full chunk timeout without any chunk arriving
+        ExecutorManager.getInstance().getScheduler().schedule(() -> {
+            if (windowDone.isDone()) {
+                return;
+            }
+            long idle = System.currentTimeMillis() - lastProgress.get();
+            if (idle >= chunkTimeout()) {
+                windowDone.completeExceptionally(new TimeoutException("No chunk received for " + idle + " ms"));
+            }
+            else {
+                scheduleDeadline(windowDone, lastProgress, chunkTimeout() - idle);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long chunkTimeout() {
+        long rate = MIN_TRANSFER_RATE;
+        long limit = BandwidthManager.getInstance().getDownloadLimit();
+        if (limit > 0) {
+            rate = Math.min(rate, Math.max(1, limit / MAX_IN_FLIGHT_WINDOWS));
+        }
+        return TIMEOUT + file.chunkSize() * 1000L / rate;
+    }
+
+    private void startEndgame() {
+        Map<PeerDTO, List<Integer>> duplicates = new HashMap<>();
+
+        for (Map.Entry<Integer, Set<PeerDTO>> entry : requestedFrom.entrySet()) {
+            for (int i = 0; i < ENDGAME_DUPLICATES; i++) {
+                PeerDTO target = selectHolder(entry.getKey(), entry.getValue());
+                if (target == null) {
+                    break;
+                }
+                entry.getValue().add(target);
+                duplicates.computeIfAbsent(target, _ -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        System.out.println("\nEntering endgame for file: " + file + " (" + requestedFrom.size() + " chunks outstanding)");
+
+        for (Map.Entry<PeerDTO, List<Integer>> entry : duplicates.entrySet()) {
+            sendRequest(entry.getValue(), entry.getKey());
+        }
+    }
+
+    private void chunkReceived(int index) {
+        Set<PeerDTO> askedPeers;
+        synchronized (this) {
+            askedPeers = requestedFrom.remove(index);
+            timedOutFrom.remove(index);
+
+            if (!endgame && pendingChunks.isEmpty() && !requestedFrom.isEmpty() && requestedFrom.size() <= ENDGAME_CHUNKS) {
+                endgame = true;
+                startEndgame();
+                return;
+            }
+            if (!endgame || askedPeers == null || askedPeers.size() < 2) {
+                return;
+            }
+        }
+
+        try {
+            NetworkManager.getInstance().getUdpSocketHandler().sendChunkCancel(file.hash(), List.of(index), askedPeers);
+        } catch (IOException e) {
+            System.err.println("Failed to cancel chunk " + index + ": " + e.getMessage());
+        }
+    }
+
+    private Set<PeerDTO> timedOutPeers() { // peers that already timed out on one of the pending chunks
+        Set<PeerDTO> peers = new HashSet<>();
+        for (Map.Entry<Integer, Set<PeerDTO>> entry : timedOutFrom.entrySet()) {
+            if (pendingChunks.contains(entry.getKey())) {
+                peers.addAll(entry.getValue());
+            }
+        }
+        return peers;
+    }
+
+    private PeerDTO selectPeer(Set<PeerDTO> excluded) {
+        List<PeerDTO> peers = new ArrayList<>(NetworkManager.getInstance().getPeer().getPeers());
+        peers.removeAll(excluded);
+        peers.remove(null);
+
+        return PeerScoreManager.getInstance().selectPeer(peers);
+    }
+
+    private PeerDTO selectHolder(int index, Set<PeerDTO> excluded) {
+        List<PeerDTO> holders = new ArrayList<>(ChunkAvailability.getInstance().getHolders(file.hash(), List.of(index)));
+        holders.removeAll(excluded);
+
+        return holders.isEmpty() ? selectPeer(excluded) : PeerScoreManager.getInstance().selectPeer(holders);
+    }
+
+    private void sendRequest(List<Integer> indices, PeerDTO target) {
+        if (target == null) {
+            System.out.println("\nNo peers to request chunks from for file: " + file);
+            return;
+        }
+
+        try {
+            NetworkManager.getInstance().getUdpSocketHandler().sendChunkBatchRequest(file.hash(), indices, List.of(target));
+            PeerScoreManager.getInstance().requestSent(target);
+        } catch (IOException e) {
+            PeerScoreManager.getInstance().failure(target);
+            System.err.println("Failed to request chunks from " + target + ": " + e.getMessage());
+        }
+    }
+
+    private void windowCompleted(List<Integer> window, PeerDTO target, boolean timedOut) {
+        if (completion.isDone()) {
+            return;
+        }
+        if (timedOut && target != null) {
+            PeerScoreManager.getInstance().timeout(target);
+        }
+
+        synchronized (this) {
+            inFlightWindows--;
+
+            for (int index : window) {
+                if (NetworkManager.getInstance().getPeer().hasChunk(file.hash(), index)) {
+                    continue;
+                }
+                requestedFrom.remove(index);
+                if (timedOut && target != null) {
+                    timedOutFrom.computeIfAbsent(index, _ -> new HashSet<>()).add(target);
+                }
+
+                int attempt = attempts.merge(index, 1, Integer::sum);
+                if (attempt < MAX_RETRIES) {
+                    System.out.println("Chunk " + index + " not received. Retrying...");
+                    pendingChunks.add(index);
+                    endgame = false;
+                }
+                else {
+                    System.err.println("Failed to receive chunk " + index + " after " + MAX_RETRIES + " attempts.");
+                    failedChunks.add(index);
+                }
+            }
+        }
+
+        if (timedOut) {
+            CompletableFuture.delayedExecutor(RETRY_DELAY, TimeUnit.MILLISECONDS, downloadManager.getExecutor()).execute(this::requestNextWindow);
+        }
+        else {
+            requestNextWindow();
+        }
+    }
+
+    synchronized List<Integer> getFailedChunks() {
+        return new ArrayList<>(failedChunks);
+    }
+}
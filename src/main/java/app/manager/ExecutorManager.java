@@ -0,0 +1,63 @@
+package app.manager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+public class ExecutorManager {
+    private static ExecutorManager instance;
+    private final boolean virtualThreads;
+    private final ConcurrentHashMap<String, ExecutorService> executors;
+    private final ScheduledExecutorService scheduler;
+
+    public static synchronized ExecutorManager getInstance() {
+        if (instance == null) {
+            instance = new ExecutorManager();
+        }
+        return instance;
+    }
+
+    public ExecutorManager() {
+        virtualThreads = ConfigManager.getInstance().getBoolean("p2p.threads.virtual", true);
+        executors = new ConcurrentHashMap<>();
+        scheduler = Executors.newScheduledThreadPool(getPoolSize("scheduler", 2), Thread.ofPlatform().name("scheduler-", 0).daemon(true).factory());
+    }
+
+    public ExecutorService getExecutor(String name, int defaultPoolSize) {
+        return executors.computeIfAbsent(name, _ -> newExecutor(name, getPoolSize(name, defaultPoolSize)));
+    }
+
+    public Thread startThread(String name, Runnable task) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).start(task);
+    }
+
+    public Thread startPlatformThread(String name, Runnable task) {
+        return Thread.ofPlatform().name(name).daemon(true).start(task);
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    private ExecutorService newExecutor(String name, int poolSize) { // p2p.pool.<name> only sizes platform pools, with virtual threads every task gets its own thread
+        if (virtualThreads) {
+            ThreadFactory factory = Thread.ofVirtual().name(name + "-", 0).factory();
+            return Executors.newThreadPerTaskExecutor(factory);
+        }
+        ThreadFactory factory = Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+        return Executors.newFixedThreadPool(poolSize, factory);
+    }
+
+    private int getPoolSize(String name, int defaultPoolSize) {
+        return ConfigManager.getInstance().getInt("p2p.pool." + name, defaultPoolSize);
+    }
+}
@@ -1,25 +1,51 @@
 package app.manager;
 
 import app.Screen;
+import app.dto.ChunkRegion;
 import app.dto.FileDTO;
 import app.dto.PeerDTO;
+import app.dto.ChunkId;
+import app.dto.FileId;
+import app.util.ChunkIdArray;
+import app.util.FileHasher;
+import app.util.MerkleTree;
 
 import javax.swing.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class FileManager {
-    final int CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+    final int TARGET_CHUNK_COUNT = 1024;
+
+    public enum StorageMode { CHUNK_FILES, PREALLOCATED }
 
     private static FileManager instance;
     public File rootFolder;
     private File destinationFolder;
     protected final String CHUNK_FOLDER = "chunks";
+    protected final String PART_EXTENSION = ".part";
+
+    private final StorageMode storageMode = StorageMode.valueOf(ConfigManager.getInstance().getString("p2p.storage.mode", "PREALLOCATED").toUpperCase());
+    private final Map<FileId, FileChannel> partChannels = new ConcurrentHashMap<>();
+    private final Map<FileId, MerkleTree> merkleTrees = new ConcurrentHashMap<>();
+    private final Map<FileId, byte[][]> chunkProofs = new ConcurrentHashMap<>();
+    private final List<ChunkListener> chunkListeners = new CopyOnWriteArrayList<>();
 
     private List<File> prevSharedFiles;
+    private final FileHasher fileHasher = new FileHasher(ExecutorManager.getInstance().getExecutor("hash", Runtime.getRuntime().availableProcessors()), 2 * Runtime.getRuntime().availableProcessors());
+    private volatile ShareFilter shareFilter = ShareFilter.of(true, List.of(), List.of());
 
     public static FileManager getInstance() {
         if(instance == null) {
@@ -31,89 +57,92 @@ public class FileManager {
     public List<File> listSharedFiles() {
         if(rootFolder == null || !rootFolder.exists()) return Collections.emptyList();
 
-        List<File> sharedFiles = new ArrayList<>();
-        findUnderFiles(rootFolder, sharedFiles);
-        return sharedFiles;
+        return ShareIndexer.getInstance().index(rootFolder, shareFilter, _ -> {});
     }
 
-    private void findUnderFiles(File folder, List<File> sharedFiles) {
-        File[] files = folder.listFiles();
-        if (files == null) return;
+    public void refreshShareFilter() {
+        DefaultListModel<String> folderModel = (DefaultListModel<String>) Screen.getInstance().excludeFoldersList.getModel();
+        DefaultListModel<String> maskModel = (DefaultListModel<String>) Screen.getInstance().excludeMasksList.getModel();
 
-        DefaultListModel<String> model = (DefaultListModel<String>) Screen.getInstance().excludeFoldersList.getModel();
-        List<String> excludeFolders = Collections.list(model.elements());
+        shareFilter = ShareFilter.of(Screen.getInstance().chkOnlyRoot.isSelected(), Collections.list(folderModel.elements()), Collections.list(maskModel.elements()));
+    }
 
-        for (File file : files) {
-            if (file.isDirectory() && !Screen.getInstance().chkOnlyRoot.isSelected() && !excludeFolders.contains(file.getAbsolutePath())) {
-                findUnderFiles(file, sharedFiles);
-            }
-            else if (file.isFile()) {
-                sharedFiles.add(file);
-            }
+    public byte[] getChunkData(FileId filehash, int chunkIndex) throws IOException {
+        ChunkRegion region = getChunkRegion(filehash, chunkIndex);
+
+        byte[] chunkData = new byte[region.length()];
+        try (RandomAccessFile raf = new RandomAccessFile(region.file(), "r")) {
+            raf.seek(region.position());
+            raf.readFully(chunkData);
         }
+
+        return chunkData;
     }
 
-    public byte[] getChunkData(String filehash, int chunkIndex) throws IOException {
+    public ChunkRegion getChunkRegion(FileId filehash, int chunkIndex) throws IOException {
         File file;
+        FileDTO fileDTO;
 
         if (NetworkManager.getInstance().getPeer().getUploadedFiles().containsKey(filehash)) {
-            FileDTO fileDTO = NetworkManager.getInstance().getPeer().getUploadedFiles().get(filehash);
+            fileDTO = NetworkManager.getInstance().getPeer().getUploadedFiles().get(filehash);
             file = new File(fileDTO.filePath());
         }
         else if (NetworkManager.getInstance().getPeer().getDownloadedFiles().containsKey(filehash)) {
-            FileDTO fileDTO = NetworkManager.getInstance().getPeer().getFiles().get(filehash);
+            fileDTO = NetworkManager.getInstance().getPeer().getDownloadedFiles().get(filehash);
             file = new File(destinationFolder, fileDTO.filename());
         }
         else if (NetworkManager.getInstance().getPeer().hasChunk(filehash, chunkIndex)) {
-            FileDTO fileDTO = NetworkManager.getInstance().getPeer().getFiles().get(filehash);
-            String fullPath = destinationFolder + File.separator + CHUNK_FOLDER + File.separator + fileDTO.hash() + ".chunk_" + chunkIndex;
-            file = new File(fullPath);
-
-            byte[] chunkData = new byte[(int) file.length()];
-            try (FileInputStream fis = new FileInputStream(file)) {
-                fis.read(chunkData);
-            }
-            return chunkData;
-
+            return getPartialChunkRegion(NetworkManager.getInstance().getPeer().getFiles().get(filehash), chunkIndex);
         }
         else {
             throw new IOException("File not found");
         }
 
         long fileLength = file.length();
-        long chunkStart = (long) chunkIndex * CHUNK_SIZE;
+        long chunkStart = (long) chunkIndex * fileDTO.chunkSize();
 
         if (chunkStart >= fileLength) {
             throw new IOException("Invalid chunk index: " + chunkIndex + " for file: " + file.getName() + " with length: " + fileLength);
         }
 
-        int chunkSize = (int) Math.min(CHUNK_SIZE, fileLength - chunkStart);
+        int chunkSize = (int) Math.min(fileDTO.chunkSize(), fileLength - chunkStart);
 
-        byte[] chunkData = new byte[chunkSize];
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            raf.seek(chunkStart);
-            raf.readFully(chunkData);
+        return new ChunkRegion(file, chunkStart, chunkSize);
+    }
+
+    private ChunkRegion getPartialChunkRegion(FileDTO fileDTO, int chunkIndex) {
+        if (storageMode == StorageMode.PREALLOCATED) {
+            long chunkStart = (long) chunkIndex * fileDTO.chunkSize();
+            return new ChunkRegion(getPartFile(fileDTO), chunkStart, (int) Math.min(fileDTO.chunkSize(), fileDTO.fileSize() - chunkStart));
         }
 
-        return chunkData;
+        String fullPath = destinationFolder + File.separator + CHUNK_FOLDER + File.separator + fileDTO.hash() + ".chunk_" + chunkIndex;
+        File file = new File(fullPath);
+        return new ChunkRegion(file, 0, (int) file.length());
     }
 
-    public void saveChunkData(String fileHash, String chunkHash, int chunkIndex, byte[] chunkData) throws IOException {
+    public void saveChunkData(FileId fileHash, ChunkId chunkHash, int chunkIndex, byte[] chunkData, byte[] proof) throws IOException {
         try {
-            String fullPath = destinationFolder + File.separator + CHUNK_FOLDER + File.separator + fileHash + ".chunk_" + chunkIndex;
-            File chunkFile  = new File(fullPath);
-
-            try (FileOutputStream fos = new FileOutputStream(chunkFile)) {
-                fos.write(chunkData);
+            if (storageMode == StorageMode.PREALLOCATED) {
+                writeChunkToPartFile(fileHash, chunkIndex, chunkData);
             }
-
-            String calculatedHash = getHash(chunkFile);
-            if (!calculatedHash.equals(chunkHash)) {
-                throw new IOException("Chunk hash mismatch: Expected " + chunkHash + ", Found " + calculatedHash);
+            else {
+                String fullPath = destinationFolder + File.separator + CHUNK_FOLDER + File.separator + fileHash + ".chunk_" + chunkIndex;
+                try (FileOutputStream fos = new FileOutputStream(fullPath)) {
+                    fos.write(chunkData);
+                }
             }
 
+            if (!merkleTrees.containsKey(fileHash)) {
+                int chunkCount = NetworkManager.getInstance().getPeer().getFiles().get(fileHash).chunkCount();
+                chunkProofs.computeIfAbsent(fileHash, _ -> new byte[chunkCount][])[chunkIndex] = proof;
+            }
             NetworkManager.getInstance().getPeer().addOwnedChunk(fileHash, chunkHash, chunkIndex);
 
+            for (ChunkListener listener : chunkListeners) {
+                listener.chunkSaved(fileHash, chunkIndex);
+            }
+
             System.out.println("Saved chunk " + chunkIndex + " for file " + fileHash);
         } catch (IOException e) {
             System.err.println("Error saving chunk " + chunkIndex + ": " + e.getMessage());
@@ -122,7 +151,115 @@ public class FileManager {
         }
     }
 
-    protected void mergeChunk(String fileHash, int totalChunks) throws IOException {
+    public byte[] getChunkProof(FileId fileHash, int chunkIndex) {
+        MerkleTree tree = merkleTrees.get(fileHash);
+        if (tree != null) {
+            return tree.proof(chunkIndex);
+        }
+
+        byte[][] proofs = chunkProofs.get(fileHash);
+        if (proofs == null || proofs[chunkIndex] == null) {
+            return new byte[0];
+        }
+        return proofs[chunkIndex];
+    }
+
+    public boolean verifyChunkProof(FileId fileHash, int chunkIndex, ChunkId chunkHash, byte[] proof) {
+        FileDTO file = NetworkManager.getInstance().getPeer().getFiles().get(fileHash);
+        if (file == null || file.merkleRoot().isEmpty()) {
+            return true;
+        }
+        return MerkleTree.verify(file.merkleRoot(), chunkIndex, file.chunkCount(), chunkHash, proof);
+    }
+
+    private void registerMerkleTree(FileDTO file) {
+        ChunkIdArray chunkHashes = NetworkManager.getInstance().getPeer().getOwnedChunks().get(file.hash());
+        if (chunkHashes != null) {
+            merkleTrees.put(file.hash(), MerkleTree.build(chunkHashes));
+        }
+        chunkProofs.remove(file.hash());
+    }
+
+    private void writeChunkToPartFile(FileId fileHash, int chunkIndex, byte[] chunkData) throws IOException {
+        FileDTO file = NetworkManager.getInstance().getPeer().getFiles().get(fileHash);
+        FileChannel channel = partChannels.get(fileHash);
+        if (channel == null) {
+            channel = openPartFile(file);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(chunkData);
+        long position = (long) chunkIndex * file.chunkSize();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    protected void prepareDownload(FileDTO file) throws IOException {
+        if (storageMode == StorageMode.PREALLOCATED) {
+            openPartFile(file);
+        }
+        else {
+            generateChunkFolder();
+        }
+    }
+
+    private synchronized FileChannel openPartFile(FileDTO file) throws IOException {
+        FileChannel channel = partChannels.get(file.hash());
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+
+        File partFile = getPartFile(file);
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            if (raf.length() != file.fileSize()) {
+                raf.setLength(file.fileSize());
+            }
+        }
+
+        channel = FileChannel.open(partFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        partChannels.put(file.hash(), channel);
+        return channel;
+    }
+
+    private File getPartFile(FileDTO file) {
+        return new File(destinationFolder, file.filename() + PART_EXTENSION);
+    }
+
+    protected void completeDownload(FileDTO file) throws IOException {
+        if (storageMode == StorageMode.CHUNK_FILES) {
+            mergeChunk(file.hash(), file.chunkCount());
+            return;
+        }
+
+        FileChannel channel = partChannels.remove(file.hash());
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+
+        File partFile = getPartFile(file);
+        File outputFile = new File(destinationFolder, file.filename());
+
+        try {
+            if (!getHash(partFile).equals(file.hash())) { // the Merkle root arrives with the notification, only the file hash binds it to the content
+                throw new IOException("\nFile hash mismatch: " + outputFile.getName());
+            }
+            System.out.println("\nFile hash matched: " + file.hash());
+
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            indexDownloadedFile(file, outputFile);
+            registerMerkleTree(file);
+
+            System.out.println("\nFile download completed: " + outputFile.getName());
+
+        } catch (IOException e) {
+            System.err.println("\nError completing download: " + e.getMessage());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void mergeChunk(FileId fileHash, int totalChunks) throws IOException {
         FileDTO fileDTO = NetworkManager.getInstance().getPeer().getFiles().get(fileHash);
         String fullPath = destinationFolder + File.separator + fileDTO.filename();
         File outputFile = new File(fullPath);
@@ -146,11 +283,13 @@ public class FileManager {
                 }
             }
 
-            if (getHash(outputFile).equals(fileHash)) {
-                System.out.println("\nFile hash matched: " + fileHash);
-            } else {
+            if (!getHash(outputFile).equals(fileHash)) { // the Merkle root arrives with the notification, only the file hash binds it to the content
                 throw new IOException("\nFile hash mismatch: " + outputFile.getName());
             }
+            System.out.println("\nFile hash matched: " + fileHash);
+
+            indexDownloadedFile(fileDTO, outputFile);
+            registerMerkleTree(fileDTO);
 
             System.out.println("\nFile merge completed: " + outputFile.getName());
 
@@ -176,8 +315,10 @@ public class FileManager {
                         if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
                             for (FileDTO file : NetworkManager.getInstance().getPeer().getUploadedFiles().values()) {
                                 if (file.filename().equals(event.context().toString())) {
+                                    HashIndex.getInstance().remove(new File(file.filePath()));
                                     sendFileDelNotification(file, event.kind().name());
                                     NetworkManager.getInstance().getPeer().removeFiles(file.hash());
+                                    NetworkManager.getInstance().getTcpSocketHandler().forgetChecksums(file.hash());
                                     return;
                                 }
                             }
@@ -207,44 +348,34 @@ public class FileManager {
     }
 
     private void sendFileDelNotification(FileDTO file, String event) throws Exception {
-        String message = "event=" + event +
-                ":filename=" + file.filename() +
-                ":fileType=" + file.fileType() +
-                ":fileSize=" + file.fileSize() +
-                ":chunkCount=" + file.chunkCount() +
-                ":hash=" + file.hash() +
-                ":ip=" + file.owner().ip() +
-                ":port=" + file.owner().port();
-
-        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(message);
+        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(event, file);
     }
 
     private void sendFileNotification(File file, String event) throws Exception {
+        int chunkSize = chooseChunkSize(file.length());
+        HashIndex.Entry entry = getIndexEntry(file, chunkSize);
+        publishFile(file, event, chunkSize, entry);
+    }
 
-        String message = "event=" + event +
-                ":filename=" + getFileName(file) +
-                ":fileType=" + getFileType(file) +
-                ":fileSize=" + getFileSize(file) +
-                ":chunkCount=" + getChunkCount(file) +
-                ":hash=" + getHash(file) +
-                ":ip=" + getOwner().ip() +
-                ":port=" + getOwner().port();
-
-        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(message);
-
-        FileDTO newFile = new FileDTO(file.getName(), getFileType(file), file.length(), Integer.parseInt(getChunkCount(file)), getHash(file), getOwner(), file.getPath());
-        NetworkManager.getInstance().getPeer().addUploadedFiles(getHash(file), newFile);
+    private synchronized void publishFile(File file, String event, int chunkSize, HashIndex.Entry entry) throws Exception {
+        MerkleTree tree = MerkleTree.build(entry.chunkHashes());
 
-        String[] chunks = new String[newFile.chunkCount()];
-        Arrays.fill(chunks, "");
-        NetworkManager.getInstance().getPeer().getOwnedChunks().put(newFile.hash(), chunks);
+        FileDTO newFile = new FileDTO(getFileName(file), getFileType(file), file.length(), chunkSize, Integer.parseInt(getChunkCount(file, chunkSize)), entry.fileHash(), getOwner(), file.getPath(), tree.root());
+        NetworkManager.getInstance().getBroadcastSocketHandler().sendFileNotification(event, newFile);
 
-        for(int i=0; i < newFile.chunkCount(); i++) {
-            String chunkHash = getHashOfChunk(file, newFile.hash(), i);
-            NetworkManager.getInstance().getPeer().addOwnedChunk(newFile.hash(), chunkHash, i);
+        merkleTrees.put(newFile.hash(), tree);
+        for (FileDTO old : NetworkManager.getInstance().getPeer().getUploadedFiles().values()) {
+            if (newFile.filePath().equals(old.filePath()) && !old.hash().equals(newFile.hash())) {
+                NetworkManager.getInstance().getTcpSocketHandler().forgetChecksums(old.hash()); // modified in place, old checksums no longer match the bytes on disk
+            }
+        }
+        NetworkManager.getInstance().getPeer().addUploadedFiles(newFile.hash(), newFile);
+        NetworkManager.getInstance().getPeer().getOwnedChunks().put(newFile.hash(), new ChunkIdArray(entry.chunkHashes()));
+        if (DhtManager.isEnabled()) {
+            DhtManager.getInstance().announce(newFile.hash());
         }
 
-        System.out.println("CHUNKS:\n" + NetworkManager.getInstance().getPeer().getOwnedChunks());
+        System.out.println("Shared file: " + newFile.filename() + " (" + newFile.chunkCount() + " chunks)");
     }
 
     private String getFileName(File file) {
@@ -258,18 +389,23 @@ public class FileManager {
         return filename.substring(lastDotIndex + 1);
     }
 
-    private String getFileSize(File file) {
-        return String.valueOf(file.length());
-    }
-
-    private String getChunkCount(File file) {
+    private String getChunkCount(File file, int chunkSize) {
         if (file.length() == 0) {
             return "0";
         }
-        return String.valueOf((int) Math.ceil((double) file.length() / CHUNK_SIZE));
+        return String.valueOf((int) Math.ceil((double) file.length() / chunkSize));
     }
 
-    protected String getHash(File file) throws Exception {
+    public int chooseChunkSize(long fileSize) {
+        long target = Math.max(1, fileSize / TARGET_CHUNK_COUNT);
+        long chunkSize = Long.highestOneBit(target);
+        if (chunkSize < target) {
+            chunkSize <<= 1;
+        }
+        return Math.clamp(chunkSize, MIN_CHUNK_SIZE, MAX_CHUNK_SIZE);
+    }
+
+    protected FileId getHash(File file) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
 
         try (FileInputStream fis = new FileInputStream(file)) {
@@ -280,29 +416,36 @@ public class FileManager {
             }
         }
 
-        byte[] hashBytes = digest.digest();
-        StringBuilder hashString = new StringBuilder();
-
-        for (byte b : hashBytes ) {
-            hashString.append(String.format("%02x", b));
-        }
-        return hashString.toString();
+        return FileId.of(digest.digest());
     }
 
-    public String getHashOfData(byte[] data) throws Exception {
+    public ChunkId getHashOfData(byte[] data) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hashBytes = digest.digest(data);
-        StringBuilder hashString = new StringBuilder();
+        return ChunkId.of(digest.digest(data));
+    }
 
-        for (byte b : hashBytes) {
-            hashString.append(String.format("%02x", b));
+    private void indexDownloadedFile(FileDTO file, File outputFile) throws IOException {
+        ChunkIdArray chunkHashes = NetworkManager.getInstance().getPeer().getOwnedChunks().get(file.hash());
+        if (chunkHashes != null && file.chunkSize() == chooseChunkSize(outputFile.length())) {
+            HashIndex.getInstance().put(outputFile, new HashIndex.Entry(outputFile.length(), outputFile.lastModified(), file.chunkSize(), file.hash(), chunkHashes.toArray()));
         }
-        return hashString.toString();
     }
 
-    private String getHashOfChunk(File file, String fileHash, int chunkIndex) throws Exception {
-        byte[] chunkData = getChunkData(fileHash, chunkIndex);
-        return getHashOfData(chunkData);
+    private HashIndex.Entry getIndexEntry(File file, int chunkSize) throws Exception {
+        HashIndex.Entry entry = HashIndex.getInstance().get(file, chunkSize);
+        if (entry != null) {
+            return entry;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        FileHasher.Result result = fileHasher.hash(file, chunkSize);
+
+        entry = new HashIndex.Entry(size, lastModified, chunkSize, result.fileHash(), result.chunkHashes());
+        if (file.length() == size && file.lastModified() == lastModified) {
+            HashIndex.getInstance().put(file, entry);
+        }
+        return entry;
     }
 
     protected void generateChunkFolder() throws IOException {
@@ -317,6 +460,18 @@ public class FileManager {
         return NetworkManager.getInstance().getPeerDTO();
     }
 
+    public void addChunkListener(ChunkListener listener) {
+        chunkListeners.add(listener);
+    }
+
+    public void removeChunkListener(ChunkListener listener) {
+        chunkListeners.remove(listener);
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
     public File getDestinationFolder() {
         return destinationFolder;
     }
@@ -330,14 +485,15 @@ public class FileManager {
         DefaultListModel<String> model = (DefaultListModel<String>) Screen.getInstance().excludeFoldersList.getModel();
         model.clear();
 
+        refreshShareFilter();
+
         try {
-            List<File> sharedFiles = listSharedFiles();
-            for (File file : sharedFiles) {
+            List<File> sharedFiles = rootFolder.exists() ? ShareIndexer.getInstance().index(rootFolder, shareFilter, file -> {
                 sendFileNotification(file, "ENTRY_CREATE");
                 if (isFileExclude(file)) {
                     sendFileNotification(file, "ENTRY_DELETE");
                 }
-            }
+            }) : Collections.emptyList();
 
             if (prevSharedFiles != null) {
                 for (File file : prevSharedFiles) {
@@ -353,7 +509,7 @@ public class FileManager {
             throw new RuntimeException(e);
         }
 
-        new Thread(this::watchSharedFolder).start();
+        ExecutorManager.getInstance().startThread("shared-folder-watcher", this::watchSharedFolder);
     }
 
     public void setDestinationFolder(File dest) {
@@ -366,12 +522,20 @@ public class FileManager {
         File[] files = destinationFolder.listFiles();
         if (files != null) {
             for (File file : files) {
-                if (file.isFile()) {
+                if (file.isFile() && file.getName().endsWith(PART_EXTENSION)) {
+                    System.out.println("Partial file: " + file.getName());
+                }
+                else if (file.isFile()) {
                     System.out.println("File: " + file.getName());
 
                     try {
-                        FileDTO newFile = new FileDTO(file.getName(), getFileType(file), file.length(), Integer.parseInt(getChunkCount(file)), getHash(file), getOwner(), file.getPath());
-                        NetworkManager.getInstance().getPeer().addDownloadedFiles(getHash(file), newFile);
+                        int chunkSize = chooseChunkSize(file.length());
+                        HashIndex.Entry entry = getIndexEntry(file, chunkSize);
+                        MerkleTree tree = MerkleTree.build(entry.chunkHashes());
+                        FileDTO newFile = new FileDTO(file.getName(), getFileType(file), file.length(), chunkSize, Integer.parseInt(getChunkCount(file, chunkSize)), entry.fileHash(), getOwner(), file.getPath(), tree.root());
+                        merkleTrees.put(newFile.hash(), tree);
+                        NetworkManager.getInstance().getPeer().getOwnedChunks().put(newFile.hash(), new ChunkIdArray(entry.chunkHashes()));
+                        NetworkManager.getInstance().getPeer().addDownloadedFiles(newFile.hash(), newFile);
                     } catch (Exception e) {
                         throw new RuntimeException(e);
                     }
@@ -383,47 +547,84 @@ public class FileManager {
         } else {
             System.err.println("The directory is empty or cannot be accessed.");
         }
-    }
 
-    public int getDownloadPercentage(FileDTO file) {
-        int totalChunks = file.chunkCount();
-        int downloadedChunks = NetworkManager.getInstance().getPeer().getDownloadedChunkCountForFile(file.hash());
-        return (int) ((downloadedChunks * 100.0) / totalChunks);
+        restoreDownloads();
     }
 
-    private boolean isFileExclude(File file) {
-        DefaultListModel<String> model = (DefaultListModel<String>) Screen.getInstance().excludeMasksList.getModel();
-        List<String> excludeMasksList = Collections.list(model.elements());
+    private void restoreDownloads() {
+        ExecutorService verifyExecutor = ExecutorManager.getInstance().getExecutor("journal-verify", Runtime.getRuntime().availableProcessors());
 
-        for (String regex : excludeMasksList) {
-            regex = regex.replace(".", "\\.").replace("*", ".*");
-            if (Pattern.matches(regex, file.getName())) {
-                return true;
+        for (DownloadJournal.Entry entry : DownloadJournal.getInstance().load()) {
+            FileDTO file = entry.file();
+            if (NetworkManager.getInstance().getPeer().getDownloadedFiles().containsKey(file.hash())) {
+                DownloadJournal.getInstance().complete(file);
+                continue;
             }
-        }
 
-        return false;
-    }
+            ChunkIdArray chunkHashes = entry.chunkHashes();
+            ChunkIdArray verified = new ChunkIdArray(file.chunkCount());
+            byte[][] proofs = new byte[file.chunkCount()][];
 
-    public void announceExcludeFolder(File folder, boolean isAdded) {
-        try {
-            List<File> underFiles = new ArrayList<>();
-            findUnderFiles(folder, underFiles);
+            List<Future<?>> checks = new ArrayList<>();
+            for (int i = 0; i < chunkHashes.length(); i++) {
+                if (!chunkHashes.has(i)) {
+                    continue;
+                }
 
+                int index = i;
+                checks.add(verifyExecutor.submit(() -> {
+                    ChunkRegion region = getPartialChunkRegion(file, index);
+                    if (!region.file().exists()) {
+                        return;
+                    }
 
-            if (isAdded) {
-                for (File file : underFiles) {
-                    sendFileNotification(file, "ENTRY_DELETE");
-                }
+                    byte[] chunkData = new byte[region.length()];
+                    try (RandomAccessFile raf = new RandomAccessFile(region.file(), "r")) {
+                        raf.seek(region.position());
+                        raf.readFully(chunkData);
+                        if (getHashOfData(chunkData).equals(chunkHashes.get(index))) {
+                            synchronized (verified) {
+                                verified.set(index, chunkHashes.get(index));
+                            }
+                            proofs[index] = entry.proofs()[index];
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Error verifying chunk " + index + " of " + file.filename() + ": " + e.getMessage());
+                    }
+                }));
             }
-            else {
-                for (File file : underFiles) {
-                    sendFileNotification(file, "ENTRY_CREATE");
+
+            for (Future<?> check : checks) {
+                try {
+                    check.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    System.err.println("Error restoring download " + file.filename() + ": " + e.getMessage());
                 }
             }
 
-        }catch (Exception e) {
-            throw new RuntimeException(e);
+            NetworkManager.getInstance().getPeer().addFiles(file.hash(), file);
+            NetworkManager.getInstance().getPeer().getOwnedChunks().put(file.hash(), verified);
+            chunkProofs.put(file.hash(), proofs);
+            DownloadJournal.getInstance().markResumable(file.hash());
+
+            System.out.println("Restored partial download: " + file.filename() + " (" + NetworkManager.getInstance().getPeer().getDownloadedChunkCountForFile(file.hash()) + "/" + file.chunkCount() + " chunks)");
         }
     }
+
+    public int getDownloadPercentage(FileDTO file) {
+        int totalChunks = file.chunkCount();
+        int downloadedChunks = NetworkManager.getInstance().getPeer().getDownloadedChunkCountForFile(file.hash());
+        return (int) ((downloadedChunks * 100.0) / totalChunks);
+    }
+
+    private boolean isFileExclude(File file) {
+        return shareFilter.isExcluded(file);
+    }
+
+    public void announceExcludeFolder(File folder, boolean isAdded) {
+        refreshShareFilter();
+
+        String event = isAdded ? "ENTRY_DELETE" : "ENTRY_CREATE";
+        ShareIndexer.getInstance().index(folder, shareFilter, file -> sendFileNotification(file, event));
+    }
 }
@@ -0,0 +1,132 @@
+package app.manager;
+
+import app.dto.ChunkId;
+import app.dto.FileId;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class HashIndex { // [magic, version, count][path, size, lastModified, chunkSize, fileHash, chunkHashes]...
+    final int MAGIC = 0x50324849;
+    final int VERSION = 2;
+    final long SAVE_DELAY = 2_000;
+
+    private static HashIndex instance;
+    private final File indexFile;
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final AtomicBoolean saveScheduled;
+
+    public record Entry(long size, long lastModified, int chunkSize, FileId fileHash, ChunkId[] chunkHashes) {}
+
+    public static synchronized HashIndex getInstance() {
+        if (instance == null) {
+            instance = new HashIndex();
+        }
+        return instance;
+    }
+
+    public HashIndex() {
+        indexFile = new File(ConfigManager.getInstance().getString("p2p.index.file", "p2p-hash-index"));
+        entries = new ConcurrentHashMap<>();
+        saveScheduled = new AtomicBoolean();
+        load();
+    }
+
+    public Entry get(File file, int chunkSize) throws IOException {
+        Entry entry = entries.get(file.getCanonicalPath());
+        if (entry == null || entry.size() != file.length() || entry.lastModified() != file.lastModified() || entry.chunkSize() != chunkSize) {
+            return null;
+        }
+        return entry;
+    }
+
+    public void put(File file, Entry entry) throws IOException {
+        entries.put(file.getCanonicalPath(), entry);
+        scheduleSave();
+    }
+
+    public void remove(File file) throws IOException {
+        if (entries.remove(file.getCanonicalPath()) != null) {
+            scheduleSave();
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            ExecutorManager.getInstance().getScheduler().schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void save() {
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            Map<String, Entry> snapshot = Map.copyOf(entries);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(snapshot.size());
+
+            for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                Entry entry = e.getValue();
+                dos.writeUTF(e.getKey());
+                dos.writeLong(entry.size());
+                dos.writeLong(entry.lastModified());
+                dos.writeInt(entry.chunkSize());
+                entry.fileHash().write(dos);
+                dos.writeInt(entry.chunkHashes().length);
+                for (ChunkId chunkHash : entry.chunkHashes()) {
+                    chunkHash.write(dos);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write hash index: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to replace hash index: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                System.err.println("Ignoring incompatible hash index: " + indexFile);
+                return;
+            }
+
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = dis.readUTF();
+                long size = dis.readLong();
+                long lastModified = dis.readLong();
+                int chunkSize = dis.readInt();
+                FileId fileHash = FileId.read(dis);
+                ChunkId[] chunkHashes = new ChunkId[dis.readInt()];
+                for (int j = 0; j < chunkHashes.length; j++) {
+                    chunkHashes[j] = ChunkId.read(dis);
+                }
+                entries.put(path, new Entry(size, lastModified, chunkSize, fileHash, chunkHashes));
+            }
+
+            System.out.println("Loaded hash index with " + entries.size() + " files");
+        } catch (IOException e) {
+            System.err.println("Failed to read hash index: " + e.getMessage());
+            entries.clear();
+        }
+    }
+}
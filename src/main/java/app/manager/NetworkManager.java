@@ -3,8 +3,10 @@ package app.manager;
 import app.Peer;
 import app.dto.PeerDTO;
 import app.socketHandler.BroadcastSocketHandler;
+import app.socketHandler.ChunkTransport;
 import app.socketHandler.TcpSocketHandler;
 import app.socketHandler.UdpSocketHandler;
+import app.socketHandler.WireCodec;
 
 import java.io.IOException;
 import java.net.*;
@@ -21,9 +23,7 @@ public class NetworkManager {
     private boolean isBroadcastConnected = false;
     private Thread listenerThreadForBroadcast;
 
-    private ServerSocket tcpServerSocket;
-    private boolean isTcpConnected = false;
-    private Thread listenerThreadForTcp;
+    private ChunkTransport chunkTransport;
 
     public static final int UDP_PORT = 5000;
     public static final int TCP_PORT = 5010;
@@ -59,8 +59,7 @@ public class NetworkManager {
             udpSocketHandler = new UdpSocketHandler(udpSocket);
 
             if (listenerThreadForUdp == null || !listenerThreadForUdp.isAlive()) {
-                listenerThreadForUdp = new Thread(this::listenForUdpResponses);
-                listenerThreadForUdp.start();
+                listenerThreadForUdp = ExecutorManager.getInstance().startThread("udp-listener", this::listenForUdpResponses);
             }
 
             // Broadcast Part
@@ -73,21 +72,19 @@ public class NetworkManager {
             broadcastSocketHandler = new BroadcastSocketHandler(BROADCAST_IP, BROADCAST_PORT, broadcastSocket);
 
             if (listenerThreadForBroadcast == null || !listenerThreadForBroadcast.isAlive()) {
-                listenerThreadForBroadcast = new Thread(this::listenForBroadcastResponse);
-                listenerThreadForBroadcast.start();
+                listenerThreadForBroadcast = ExecutorManager.getInstance().startThread("broadcast-listener", this::listenForBroadcastResponse);
             }
 
             broadcastSocketHandler.sendBroadcastRequest();
 
             // TCP Part
-            tcpServerSocket = new ServerSocket(TCP_PORT);
-            isTcpConnected = true;
-
             tcpSocketHandler = new TcpSocketHandler();
 
-            if (listenerThreadForTcp == null || !listenerThreadForTcp.isAlive()) {
-                listenerThreadForTcp = new Thread(this::listenForTcpResponses);
-                listenerThreadForTcp.start();
+            chunkTransport = ChunkTransport.fromName(ConfigManager.getInstance().getString("p2p.transport", "blocking"));
+            chunkTransport.start(TCP_PORT);
+
+            if (DhtManager.isEnabled()) {
+                DhtManager.getInstance().start();
             }
 
             System.out.println("\nIP: " + peer.getIp() + " Port: " + peer.getPort() + " is connecting to the network.\n");
@@ -121,66 +118,46 @@ public class NetworkManager {
             broadcastSocket.close();
         }
 
-        isTcpConnected = false;
-        if (listenerThreadForTcp != null && listenerThreadForTcp.isAlive()) {
-            listenerThreadForTcp.interrupt();
-        }
-        if (tcpServerSocket != null && !tcpServerSocket.isClosed()) {
-            try {
-                tcpServerSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (chunkTransport != null) {
+            chunkTransport.stop();
         }
 
         peer.getPeers().clear();
+        ChunkAvailability.getInstance().clear();
 
         System.out.println("IP: " + peer.getIp() + " Port: " + peer.getPort() + " is disconnecting from the network.");
     }
 
     private void listenForUdpResponses() {
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[WireCodec.MAX_PACKET];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
         while (isUdpConnected) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setLength(buffer.length);
                 udpSocket.receive(packet);
                 udpSocketHandler.processResponse(packet);
             } catch (IOException e) {
                 if(!isUdpConnected) break;
+                System.err.println("Dropped packet: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Dropped malformed packet from " + packet.getSocketAddress() + ": " + e);
             }
         }
     }
 
     private void listenForBroadcastResponse(){
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[WireCodec.MAX_PACKET];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
         while (isBroadcastConnected) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setLength(buffer.length);
                 broadcastSocket.receive(packet);
                 broadcastSocketHandler.processResponse(packet);
             } catch (IOException e) {
                 if(!isBroadcastConnected) break;
-            }
-        }
-    }
-
-    private void listenForTcpResponses() {
-        while (isTcpConnected) {
-            Socket clientSocket = null;
-            try {
-                clientSocket = tcpServerSocket.accept();
-                clientSocket.setReceiveBufferSize(257 * 1024);
-                Socket finalClientSocket = clientSocket;
-                System.out.println("New TCP connection from " + finalClientSocket.getInetAddress().getHostAddress() + ":" + finalClientSocket.getPort());
-                new Thread(() -> {
-                    try {
-                        tcpSocketHandler.processResponse(finalClientSocket);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }).start();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                System.err.println("Dropped packet: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Dropped malformed packet from " + packet.getSocketAddress() + ": " + e);
             }
         }
     }
@@ -205,6 +182,10 @@ public class NetworkManager {
         return broadcastSocketHandler;
     }
 
+    public ChunkTransport getChunkTransport() {
+        return chunkTransport;
+    }
+
     public TcpSocketHandler getTcpSocketHandler() {
         return tcpSocketHandler;
     }
@@ -0,0 +1,78 @@
+package app.manager;
+
+public class PeerScore {
+    private final String ip;
+    private double rttMillis;
+    private double bytesPerSecond;
+    private double penalty;
+    private int failures;
+    private int timeouts;
+    private long deliveries;
+    private long lastRequestAt;
+    private long lastDeliveryAt;
+    private boolean awaitingFirstChunk;
+
+    final double SMOOTHING = 0.2;
+    final double PENALTY_DECAY = 0.95;
+
+    public PeerScore(String ip) {
+        this.ip = ip;
+    }
+
+    public synchronized void requestSent() {
+        lastRequestAt = System.currentTimeMillis();
+        awaitingFirstChunk = true;
+    }
+
+    public synchronized void chunkDelivered(int bytes) {
+        long now = System.currentTimeMillis();
+        long start;
+
+        if (awaitingFirstChunk && lastRequestAt > 0) {
+            rttMillis = smooth(rttMillis, now - lastRequestAt);
+            awaitingFirstChunk = false;
+            start = lastRequestAt;
+        }
+        else {
+            start = lastDeliveryAt;
+        }
+
+        long elapsed = Math.max(1, now - start);
+        bytesPerSecond = smooth(bytesPerSecond, bytes * 1000.0 / elapsed);
+
+        penalty *= PENALTY_DECAY;
+        deliveries++;
+        lastDeliveryAt = now;
+    }
+
+    public synchronized void timeout() {
+        timeouts++;
+        penalty += 2;
+        awaitingFirstChunk = false;
+    }
+
+    public synchronized void failure() {
+        failures++;
+        penalty += 1;
+    }
+
+    public synchronized double getScore(double priorRate) { // peers without deliveries are scored at the prior, so timeouts push them below measured peers
+        return (deliveries == 0 ? priorRate : getRate()) / (1 + penalty);
+    }
+
+    public synchronized double getRate() {
+        return bytesPerSecond / (1 + rttMillis / 100.0);
+    }
+
+    public synchronized boolean isSampled() {
+        return deliveries > 0;
+    }
+
+    private double smooth(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+
+    public synchronized String toString() {
+        return String.format("%s (rtt=%.0fms, %.0f KB/s, failures=%d, timeouts=%d)", ip, rttMillis, bytesPerSecond / 1024, failures, timeouts);
+    }
+}
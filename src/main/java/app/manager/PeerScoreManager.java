@@ -0,0 +1,74 @@
+package app.manager;
+
+import app.dto.PeerDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class PeerScoreManager {
+    private static PeerScoreManager instance;
+    private final ConcurrentHashMap<String, PeerScore> scores;
+
+    final double EXPLORATION_RATE = Double.parseDouble(ConfigManager.getInstance().getString("p2p.peers.exploration", "0.1"));
+
+    public static synchronized PeerScoreManager getInstance() {
+        if (instance == null) {
+            instance = new PeerScoreManager();
+        }
+        return instance;
+    }
+
+    public PeerScoreManager() {
+        scores = new ConcurrentHashMap<>();
+    }
+
+    public PeerScore getScore(String ip) {
+        return scores.computeIfAbsent(ip, PeerScore::new);
+    }
+
+    public void requestSent(PeerDTO peer) {
+        getScore(peer.ip()).requestSent();
+    }
+
+    public void chunkDelivered(String ip, int bytes) {
+        getScore(ip).chunkDelivered(bytes);
+    }
+
+    public void timeout(PeerDTO peer) {
+        getScore(peer.ip()).timeout();
+        System.out.println("Peer timed out: " + getScore(peer.ip()));
+    }
+
+    public void failure(PeerDTO peer) {
+        failure(peer.ip());
+    }
+
+    public void failure(String ip) {
+        getScore(ip).failure();
+    }
+
+    public PeerDTO selectPeer(Collection<PeerDTO> candidates) {
+        List<PeerDTO> peers = new ArrayList<>(candidates);
+        if (peers.isEmpty()) {
+            return null;
+        }
+
+        if (ThreadLocalRandom.current().nextDouble() < EXPLORATION_RATE) {
+            return peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+        }
+
+        double prior = medianRate();
+        return peers.stream()
+                .max(Comparator.comparingDouble(peer -> getScore(peer.ip()).getScore(prior)))
+                .orElse(null);
+    }
+
+    private double medianRate() {
+        double[] rates = scores.values().stream().filter(PeerScore::isSampled).mapToDouble(PeerScore::getRate).sorted().toArray();
+        return rates.length == 0 ? 1 : rates[rates.length / 2];
+    }
+}
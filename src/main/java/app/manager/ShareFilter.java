@@ -0,0 +1,41 @@
+package app.manager;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public final class ShareFilter {
+    private final boolean onlyRoot;
+    private final Set<String> excludeFolders;
+    private final List<Pattern> excludeMasks;
+
+    private ShareFilter(boolean onlyRoot, Set<String> excludeFolders, List<Pattern> excludeMasks) {
+        this.onlyRoot = onlyRoot;
+        this.excludeFolders = excludeFolders;
+        this.excludeMasks = excludeMasks;
+    }
+
+    public static ShareFilter of(boolean onlyRoot, Collection<String> excludeFolders, Collection<String> excludeMasks) {
+        return new ShareFilter(onlyRoot, Set.copyOf(excludeFolders), excludeMasks.stream().map(ShareFilter::compileMask).toList());
+    }
+
+    public static Pattern compileMask(String mask) {
+        return Pattern.compile(mask.replace(".", "\\.").replace("*", ".*"));
+    }
+
+    public boolean shouldDescend(File folder) {
+        return !onlyRoot && !excludeFolders.contains(folder.getAbsolutePath());
+    }
+
+    public boolean isExcluded(File file) {
+        String name = file.getName();
+        for (Pattern mask : excludeMasks) {
+            if (mask.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
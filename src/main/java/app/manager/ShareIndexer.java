@@ -0,0 +1,109 @@
+package app.manager;
+
+import java.io.File;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShareIndexer {
+    final int PROGRESS_INTERVAL = 1000;
+
+    private static ShareIndexer instance;
+    private final ForkJoinPool pool;
+    private final Semaphore ioPermits;
+
+    public interface FileVisitor {
+        void visit(File file) throws Exception;
+    }
+
+    public static synchronized ShareIndexer getInstance() {
+        if (instance == null) {
+            instance = new ShareIndexer();
+        }
+        return instance;
+    }
+
+    public ShareIndexer() {
+        pool = new ForkJoinPool(ConfigManager.getInstance().getInt("p2p.indexer.parallelism", Runtime.getRuntime().availableProcessors()));
+        ioPermits = new Semaphore(ConfigManager.getInstance().getInt("p2p.indexer.io", 4));
+    }
+
+    public List<File> index(File root, ShareFilter filter, FileVisitor visitor) {
+        Queue<File> found = new ConcurrentLinkedQueue<>();
+        AtomicInteger progress = new AtomicInteger();
+
+        pool.invoke(new FolderTask(root, filter, visitor, found, progress));
+
+        System.out.println("Indexed " + progress.get() + " files under " + root);
+        return new ArrayList<>(found);
+    }
+
+    private class FolderTask extends RecursiveAction { // never serialized, RecursiveAction is only Serializable by inheritance
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final File folder;
+        private final transient ShareFilter filter;
+        private final transient FileVisitor visitor;
+        private final transient Queue<File> found;
+        private final AtomicInteger progress;
+
+        FolderTask(File folder, ShareFilter filter, FileVisitor visitor, Queue<File> found, AtomicInteger progress) {
+            this.folder = folder;
+            this.filter = filter;
+            this.visitor = visitor;
+            this.found = found;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = folder.listFiles();
+            if (files == null) return;
+
+            List<FolderTask> subTasks = new ArrayList<>();
+            for (File file : files) {
+                if (file.isDirectory() && filter.shouldDescend(file)) {
+                    FolderTask task = new FolderTask(file, filter, visitor, found, progress);
+                    task.fork();
+                    subTasks.add(task);
+                }
+                else if (file.isFile()) {
+                    visitFile(file);
+                }
+            }
+
+            for (FolderTask task : subTasks) {
+                task.join();
+            }
+        }
+
+        private void visitFile(File file) {
+            found.add(file);
+
+            try {
+                ioPermits.acquire();
+                try {
+                    visitor.visit(file);
+                } finally {
+                    ioPermits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error indexing " + file + ": " + e.getMessage());
+            }
+
+            int count = progress.incrementAndGet();
+            if (count % PROGRESS_INTERVAL == 0) {
+                System.out.println("Indexed " + count + " files under " + folder);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package app.piece;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+public interface PieceSelectionStrategy {
+
+    List<Integer> select(Collection<Integer> candidates, int count, IntUnaryOperator availability);
+
+    static PieceSelectionStrategy fromName(String name) {
+        return switch (name.toUpperCase().replace('-', '_')) {
+            case "SEQUENTIAL" -> new SequentialPieceSelection();
+            case "RANDOM" -> new RandomPieceSelection();
+            case "RAREST_FIRST" -> new RarestFirstPieceSelection();
+            default -> throw new IllegalArgumentException("Unknown piece selection strategy: " + name);
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package app.piece;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
+public class RarestFirstPieceSelection implements PieceSelectionStrategy {
+
+    @Override
+    public List<Integer> select(Collection<Integer> candidates, int count, IntUnaryOperator availability) {
+        List<Integer> shuffled = new ArrayList<>(candidates);
+        Collections.shuffle(shuffled, ThreadLocalRandom.current());
+        shuffled.sort(Comparator.comparingInt(availability::applyAsInt));
+        return new ArrayList<>(shuffled.subList(0, Math.min(count, shuffled.size())));
+    }
+}
@@ -0,0 +1,17 @@
+package app.piece;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+public class SequentialPieceSelection implements PieceSelectionStrategy {
+
+    @Override
+    public List<Integer> select(Collection<Integer> candidates, int count, IntUnaryOperator availability) {
+        List<Integer> sorted = new ArrayList<>(candidates);
+        Collections.sort(sorted);
+        return new ArrayList<>(sorted.subList(0, Math.min(count, sorted.size())));
+    }
+}
@@ -0,0 +1,68 @@
+package app.socketHandler;
+
+import app.dto.ChunkRegion;
+import app.manager.ConnectionManager;
+import app.manager.ExecutorManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class BlockingChunkTransport implements ChunkTransport {
+
+    private ServerSocketChannel tcpServerChannel;
+    private volatile boolean isTcpConnected = false;
+    private Thread listenerThreadForTcp;
+
+    @Override
+    public void start(int port) throws IOException {
+        tcpServerChannel = ServerSocketChannel.open();
+        tcpServerChannel.bind(new InetSocketAddress(port));
+        isTcpConnected = true;
+
+        if (listenerThreadForTcp == null || !listenerThreadForTcp.isAlive()) {
+            listenerThreadForTcp = ExecutorManager.getInstance().startThread("tcp-listener", this::listenForTcpResponses);
+        }
+    }
+
+    @Override
+    public void stop() {
+        isTcpConnected = false;
+        if (listenerThreadForTcp != null && listenerThreadForTcp.isAlive()) {
+            listenerThreadForTcp.interrupt();
+        }
+        if (tcpServerChannel != null && tcpServerChannel.isOpen()) {
+            try {
+                tcpServerChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        ConnectionManager.getInstance().closeAll();
+    }
+
+    @Override
+    public void sendChunk(String ip, int port, ByteBuffer header, ChunkRegion region) throws IOException {
+        ConnectionManager.getInstance().sendChunk(ip, port, header, region);
+    }
+
+    private void listenForTcpResponses() {
+        while (isTcpConnected) {
+            try {
+                SocketChannel clientChannel = tcpServerChannel.accept();
+                clientChannel.setOption(StandardSocketOptions.SO_RCVBUF, ConnectionManager.SOCKET_BUFFER_SIZE);
+                clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                String clientIp = ((InetSocketAddress) clientChannel.getRemoteAddress()).getAddress().getHostAddress();
+                PeerConnection connection = new PeerConnection(clientIp, clientChannel);
+                System.out.println("New TCP connection from " + connection);
+                ConnectionManager.getInstance().register(connection);
+            } catch (IOException e) {
+                if(!isTcpConnected) break;
+                System.err.println("Failed to accept TCP connection: " + e.getMessage());
+            }
+        }
+    }
+}
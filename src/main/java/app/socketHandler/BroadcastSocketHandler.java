@@ -1,14 +1,19 @@
 package app.socketHandler;
 
+import app.manager.ConfigManager;
+import app.manager.FileManager;
 import app.manager.NetworkManager;
 import app.Peer;
 import app.dto.FileDTO;
+import app.dto.FileId;
 import app.dto.PeerDTO;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 public class BroadcastSocketHandler {
 
@@ -16,6 +21,7 @@ public class BroadcastSocketHandler {
     final private String BROADCAST_IP;
     final private int BROADCAST_PORT;
     final private DatagramSocket broadcastSocket;
+    final boolean BINARY_BROADCAST = ConfigManager.getInstance().getBoolean("p2p.wire.broadcast", false);
 
     public BroadcastSocketHandler(String broadcastIp, int broadcastPort, DatagramSocket broadcastSocket) {
         this.BROADCAST_IP = broadcastIp;
@@ -24,6 +30,11 @@ public class BroadcastSocketHandler {
     }
 
     public void processResponse(DatagramPacket packet) throws IOException {
+        if (WireCodec.isBinary(packet.getData(), packet.getOffset(), packet.getLength())) {
+            processBinaryResponse(packet);
+            return;
+        }
+
         String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
         System.out.println("Received broadcast packet from: " + packet.getAddress() + ":" + packet.getPort() + " (" + message + ")\n");
@@ -32,13 +43,39 @@ public class BroadcastSocketHandler {
             bootstrapRequestHandler(packet);
         }
 
-        else if (message.startsWith("FILE_NOTIFICATION")) { // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x
+        else if (message.startsWith("FILE_NOTIFICATION")) { // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
             fileNotificationHandler(packet);
         }
     }
 
+    private void processBinaryResponse(DatagramPacket packet) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+
+        try {
+            byte type = WireCodec.readType(in);
+            System.out.println("Received binary broadcast packet from: " + packet.getAddress() + ":" + packet.getPort() + " type: " + type + "\n");
+
+            if (type == WireCodec.BOOTSTRAP_REQUEST) { // [ip, port]
+                handleBootstrapRequest(WireCodec.readAddress(in), WireCodec.readPort(in));
+            }
+            else if (type == WireCodec.FILE_NOTIFICATION) { // [event, filename, fileType, fileSize, chunkCount, hash, ip, port, chunkSize, merkleRoot]
+                byte event = in.get();
+                handleFileNotification(event == WireCodec.EVENT_DELETE ? "ENTRY_DELETE" : "ENTRY_CREATE", WireCodec.readFileNotification(in));
+            }
+        } catch (BufferUnderflowException e) {
+            throw WireCodec.malformed(e);
+        }
+    }
+
     public void sendBroadcastRequest() throws IOException {
         System.out.println("Sending bootstrap request...");
+        if (BINARY_BROADCAST) {
+            ByteBuffer data = WireCodec.encodeBootstrapRequest(WireCodec.buffer(), peer.getIp(), peer.getPort());
+            sendAndRelease(data, BROADCAST_IP, BROADCAST_PORT);
+            System.out.println("Bootstrap request sent to: " + BROADCAST_IP + ":" + BROADCAST_PORT + " (binary)");
+            return;
+        }
+
         String message = "BOOTSTRAP_REQUEST:" +
                 "ip=" + peer.getIp() +
                 ":port=" + peer.getPort();
@@ -48,9 +85,25 @@ public class BroadcastSocketHandler {
         System.out.println("Bootstrap request sent to: " + BROADCAST_IP + ":" + BROADCAST_PORT + " (" + message + ")");
     }
 
-    public void sendFileNotification(String notify) throws IOException { // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx
+    public void sendFileNotification(String event, FileDTO file) throws IOException { // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
+        if (BINARY_BROADCAST) {
+            byte eventType = event.equals("ENTRY_DELETE") ? WireCodec.EVENT_DELETE : WireCodec.EVENT_CREATE;
+            System.out.println("Sending file notification: (" + event + " " + file.filename() + ", binary)");
+            sendAndRelease(WireCodec.encodeFileNotification(WireCodec.buffer(), eventType, file), BROADCAST_IP, BROADCAST_PORT);
+            return;
+        }
 
-        String message = "FILE_NOTIFICATION:" + notify;
+        String message = "FILE_NOTIFICATION:" +
+                "event=" + event +
+                ":filename=" + WireCodec.escapeField(file.filename()) +
+                ":fileType=" + WireCodec.escapeField(file.fileType()) +
+                ":fileSize=" + file.fileSize() +
+                ":chunkCount=" + file.chunkCount() +
+                ":hash=" + file.hash() +
+                ":ip=" + file.owner().ip() +
+                ":port=" + file.owner().port() +
+                ":chunkSize=" + file.chunkSize() +
+                ":merkleRoot=" + file.merkleRoot();
 
         byte[] data = message.getBytes();
 
@@ -67,6 +120,10 @@ public class BroadcastSocketHandler {
         String ip = peerInfo[1].split(":")[0];
         int port = Integer.parseInt(parts[2].split("=")[1]);
 
+        handleBootstrapRequest(ip, port);
+    }
+
+    private void handleBootstrapRequest(String ip, int port) throws IOException {
         if (InetAddress.getByName(peer.getIp()).getHostAddress().equals(ip) && peer.getPort() == port) {
             return;
         }
@@ -77,25 +134,29 @@ public class BroadcastSocketHandler {
         peer.addPeer(newPeer);
     }
 
-    private void fileNotificationHandler(DatagramPacket packet) throws IOException{ // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx
+    private void fileNotificationHandler(DatagramPacket packet) throws IOException{ // FILE_NOTIFICATION:event=x:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
         String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
         String[] parts = message.split(":");
         String event = parts[1].split("=")[1];
-        String filename = parts[2].split("=")[1];
-        String fileType = parts[3].split("=")[1];
+        String filename = WireCodec.unescapeField(parts[2].split("=")[1]);
+        String fileType = WireCodec.unescapeField(parts[3].split("=", -1)[1]);
         long fileSize = Long.parseLong(parts[4].split("=")[1]);
         int chunkCount = Integer.parseInt(parts[5].split("=")[1]);
-        String hash = parts[6].split("=")[1];
+        FileId hash = FileId.fromHex(parts[6].split("=")[1]);
         String ip = parts[7].split("=")[1];
         int port = Integer.parseInt(parts[8].split("=")[1]);
+        int chunkSize = parts.length > 9 ? Integer.parseInt(parts[9].split("=")[1]) : FileManager.DEFAULT_CHUNK_SIZE;
+        String merkleRoot = parts.length > 10 ? parts[10].substring(parts[10].indexOf('=') + 1) : "";
 
-        if (InetAddress.getByName(peer.getIp()).getHostAddress().equals(ip) && peer.getPort() == port) {
+        handleFileNotification(event, new FileDTO(filename, fileType, fileSize, chunkSize, chunkCount, hash, new PeerDTO(ip, port), null, merkleRoot));
+    }
+
+    private void handleFileNotification(String event, FileDTO fileDTO) throws IOException {
+        if (InetAddress.getByName(peer.getIp()).getHostAddress().equals(fileDTO.owner().ip()) && peer.getPort() == fileDTO.owner().port()) {
             return;
         }
 
-        FileDTO fileDTO = new FileDTO(filename, fileType, fileSize, chunkCount, hash, new PeerDTO(ip, port), null);
-
         if (event.equals("ENTRY_CREATE")) {
             if (peer.getUploadedFiles().containsKey(fileDTO.hash())) {
                 return;
@@ -109,6 +170,14 @@ public class BroadcastSocketHandler {
         peer.addPeer(fileDTO.owner());
     }
 
+    private void sendAndRelease(ByteBuffer data, String ip, int port) throws IOException {
+        try {
+            getSocket().send(new DatagramPacket(data.array(), data.arrayOffset() + data.position(), data.remaining(), InetAddress.getByName(ip), port));
+        } finally {
+            WireCodec.release(data);
+        }
+    }
+
     private void sendPacket(byte [] data, String ip, int port) throws IOException {
         DatagramPacket packet = new DatagramPacket(
                 data,
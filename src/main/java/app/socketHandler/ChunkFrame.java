@@ -0,0 +1,82 @@
+package app.socketHandler;
+
+import app.dto.ChunkHeader;
+import app.dto.ChunkId;
+import app.dto.FileId;
+import app.util.ChunkCompression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class ChunkFrame { // [headerLength][type, fileHash, index, chunkHash, chunkSize, codec, rawSize, checksumType, checksum, proofLength, proof][chunk bytes]
+
+    public static final String CHUNK_RESULT = "CHUNK_RESULT";
+    public static final int MAX_HEADER = 64 * 1024;
+
+    public static ByteBuffer encodeHeader(FileId fileHash, int index, ChunkId chunkHash, int chunkSize, byte checksumType, long checksum, byte[] proof) throws IOException {
+        return encode(fileHash, index, chunkHash, chunkSize, ChunkCompression.NONE, chunkSize, checksumType, checksum, proof, null);
+    }
+
+    public static ByteBuffer encodeFrame(FileId fileHash, int index, ChunkId chunkHash, byte codec, int rawSize, byte checksumType, long checksum, byte[] proof, byte[] payload) throws IOException {
+        return encode(fileHash, index, chunkHash, payload.length, codec, rawSize, checksumType, checksum, proof, payload);
+    }
+
+    private static ByteBuffer encode(FileId fileHash, int index, ChunkId chunkHash, int chunkSize, byte codec, int rawSize, byte checksumType, long checksum, byte[] proof, byte[] payload) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256 + (payload == null ? 0 : payload.length));
+        DataOutputStream dos = new DataOutputStream(bos);
+
+        dos.writeInt(0);
+        dos.writeUTF(CHUNK_RESULT);
+        fileHash.write(dos);
+        dos.writeInt(index);
+        chunkHash.write(dos);
+        dos.writeInt(chunkSize);
+        dos.writeByte(codec);
+        dos.writeInt(rawSize);
+        dos.writeByte(checksumType);
+        dos.writeLong(checksum);
+        dos.writeShort(proof.length);
+        dos.write(proof);
+        int headerLength = dos.size() - Integer.BYTES;
+        if (payload != null) {
+            dos.write(payload);
+        }
+        dos.flush();
+
+        ByteBuffer frame = ByteBuffer.wrap(bos.toByteArray());
+        frame.putInt(0, headerLength);
+        return frame;
+    }
+
+    public static ChunkHeader readHeader(DataInputStream dis) throws IOException {
+        int headerLength = dis.readInt();
+        if (headerLength <= 0 || headerLength > MAX_HEADER) {
+            throw new IOException("Invalid frame header length: " + headerLength);
+        }
+        byte[] header = new byte[headerLength];
+        dis.readFully(header);
+        return decodeHeader(ByteBuffer.wrap(header));
+    }
+
+    public static ChunkHeader decodeHeader(ByteBuffer header) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(header.array(), header.arrayOffset() + header.position(), header.remaining()));
+
+        String type = dis.readUTF();
+        FileId fileHash = FileId.read(dis);
+        int index = dis.readInt();
+        ChunkId chunkHash = ChunkId.read(dis);
+        int chunkSize = dis.readInt();
+        byte codec = dis.readByte();
+        int rawSize = dis.readInt();
+        byte checksumType = dis.readByte();
+        long checksum = dis.readLong();
+        byte[] proof = new byte[dis.readUnsignedShort()];
+        dis.readFully(proof);
+
+        return new ChunkHeader(type, fileHash, index, chunkHash, chunkSize, codec, rawSize, checksumType, checksum, proof);
+    }
+}
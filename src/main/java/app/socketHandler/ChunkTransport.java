@@ -0,0 +1,23 @@
+package app.socketHandler;
+
+import app.dto.ChunkRegion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface ChunkTransport {
+
+    void start(int port) throws IOException;
+
+    void stop();
+
+    void sendChunk(String ip, int port, ByteBuffer header, ChunkRegion region) throws IOException; // region is null when the payload is inside the header buffer
+
+    static ChunkTransport fromName(String name) {
+        return switch (name.toUpperCase()) {
+            case "BLOCKING" -> new BlockingChunkTransport();
+            case "NIO" -> new NioChunkTransport();
+            default -> throw new IllegalArgumentException("Unknown chunk transport: " + name);
+        };
+    }
+}
@@ -0,0 +1,307 @@
+package app.socketHandler;
+
+import app.dto.ChunkHeader;
+import app.dto.ChunkRegion;
+import app.manager.ConnectionManager;
+import app.manager.ExecutorManager;
+import app.manager.NetworkManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class NioChunkTransport implements ChunkTransport {
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private Thread selectorThread;
+    private long lastIdleCheck;
+
+    private final ConcurrentHashMap<String, NioConnection> connections = new ConcurrentHashMap<>();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final ExecutorService receiveExecutor = ExecutorManager.getInstance().getExecutor("tcp-receive", 4);
+
+    final int MAX_SEND_ATTEMPTS = 2;
+    final long STOP_TIMEOUT = 5_000;
+
+    @Override
+    public void start(int port) throws IOException {
+        selector = Selector.open();
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = ExecutorManager.getInstance().startPlatformThread("nio-selector", this::runSelector);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (selector == null) {
+            return;
+        }
+        selector.wakeup();
+
+        try {
+            selectorThread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (NioConnection connection : connections.values()) { // anything the selector did not get to before exiting
+            closeConnection(connection, new ClosedChannelException());
+        }
+    }
+
+    @Override
+    public void sendChunk(String ip, int port, ByteBuffer header, ChunkRegion region) throws IOException {
+        IOException lastError = null;
+
+        for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS; attempt++) {
+            if (!running) {
+                throw new ClosedChannelException();
+            }
+            NioConnection connection = getConnection(ip, port);
+            NioConnection.PendingWrite write = new NioConnection.PendingWrite(header.duplicate(), region);
+            connection.enqueue(write);
+            runOnSelector(() -> enableWrites(connection));
+
+            try {
+                awaitWrite(connection, write);
+                return;
+            } catch (ExecutionException e) {
+                lastError = e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+                System.err.println("Connection to " + connection + " lost. Reconnecting...");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending chunk to " + ip, e);
+            }
+        }
+
+        throw lastError;
+    }
+
+    private void awaitWrite(NioConnection connection, NioConnection.PendingWrite write) throws ExecutionException, InterruptedException { // gives up once the connection stops making progress
+        while (true) {
+            try {
+                write.done.get(ConnectionManager.IDLE_TIMEOUT / 4, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                if (!running || connection.getIdleTime() > ConnectionManager.IDLE_TIMEOUT) {
+                    runOnSelector(() -> closeConnection(connection, new IOException("Write to " + connection + " timed out")));
+                    write.done.completeExceptionally(new IOException("Write to " + connection + " timed out"));
+                }
+            }
+        }
+    }
+
+    private NioConnection getConnection(String ip, int port) throws IOException {
+        NioConnection connection = connections.get(ip);
+        if (connection != null && connection.channel.isOpen()) {
+            return connection;
+        }
+
+        synchronized (this) {
+            connection = connections.get(ip);
+            if (connection != null && connection.channel.isOpen()) {
+                return connection;
+            }
+
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, ConnectionManager.SOCKET_BUFFER_SIZE);
+            boolean connected = channel.connect(new InetSocketAddress(ip, port));
+
+            NioConnection newConnection = new NioConnection(ip, channel);
+            connections.put(ip, newConnection);
+            runOnSelector(() -> register(newConnection, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT));
+
+            System.out.println("New TCP connection to " + newConnection);
+            return newConnection;
+        }
+    }
+
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void register(NioConnection connection, int interestOps) {
+        try {
+            connection.key = connection.channel.register(selector, interestOps, connection);
+        } catch (ClosedChannelException e) {
+            closeConnection(connection, e);
+        }
+    }
+
+    private void enableWrites(NioConnection connection) {
+        if (connection.key == null || !connection.key.isValid()) {
+            if (!connection.channel.isOpen()) {
+                connection.failPendingWrites(new ClosedChannelException());
+            }
+            return;
+        }
+        if ((connection.key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+
+                closeIdleConnections();
+            }
+        } catch (IOException e) {
+            System.err.println("NIO selector failed: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                connection.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ | (connection.hasPendingWrites() ? SelectionKey.OP_WRITE : 0));
+                return;
+            }
+            if (key.isReadable()) {
+                connection.read((header, chunkData) -> dispatchFrame(connection, header, chunkData));
+                pauseReadsIfLimited(connection);
+            }
+            if (key.isValid() && key.isWritable() && connection.write()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            closeConnection(connection, e);
+        }
+    }
+
+    private void pauseReadsIfLimited(NioConnection connection) {
+        long pauseNanos = connection.takeReadPause();
+        if (pauseNanos <= 0 || !connection.key.isValid()) {
+            return;
+        }
+
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        ExecutorManager.getInstance().getScheduler().schedule(() -> runOnSelector(() -> {
+            if (connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }), pauseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void accept() {
+        try {
+            SocketChannel clientChannel = serverChannel.accept();
+            if (clientChannel == null) {
+                return;
+            }
+            clientChannel.configureBlocking(false);
+            clientChannel.setOption(StandardSocketOptions.SO_RCVBUF, ConnectionManager.SOCKET_BUFFER_SIZE);
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            String clientIp = ((InetSocketAddress) clientChannel.getRemoteAddress()).getAddress().getHostAddress();
+            NioConnection connection = new NioConnection(clientIp, clientChannel);
+            connections.merge(clientIp, connection, (current, added) -> current.channel.isOpen() ? current : added);
+            register(connection, SelectionKey.OP_READ);
+
+            System.out.println("New TCP connection from " + connection);
+        } catch (IOException e) {
+            System.err.println("Failed to accept TCP connection: " + e.getMessage());
+        }
+    }
+
+    private void dispatchFrame(NioConnection connection, ChunkHeader header, byte[] chunkData) {
+        receiveExecutor.submit(() -> {
+            try {
+                NetworkManager.getInstance().getTcpSocketHandler().handleChunk(connection.ip, header, chunkData);
+            } catch (Exception e) {
+                System.err.println("Error handling chunk from " + connection + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < 1000) {
+            return;
+        }
+        lastIdleCheck = now;
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection && connection.getIdleTime() > ConnectionManager.IDLE_TIMEOUT) {
+                System.out.println("Closing idle TCP connection: " + connection);
+                closeConnection(connection, new ClosedChannelException());
+            }
+        }
+    }
+
+    private void closeConnection(NioConnection connection, IOException cause) {
+        connections.remove(connection.ip, connection);
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close connection to " + connection.ip + ": " + e.getMessage());
+        }
+        connection.failPendingWrites(cause);
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                closeConnection(connection, new ClosedChannelException());
+            }
+        }
+        for (NioConnection connection : connections.values()) {
+            closeConnection(connection, new ClosedChannelException());
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package app.socketHandler;
+
+import app.dto.ChunkHeader;
+import app.dto.ChunkRegion;
+import app.manager.BandwidthManager;
+import app.manager.NetworkManager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+class NioConnection {
+    private enum ReadState { LENGTH, HEADER, BODY }
+
+    final String ip;
+    final SocketChannel channel;
+    SelectionKey key;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(ChunkFrame.MAX_HEADER);
+    private ReadState readState = ReadState.LENGTH;
+    private int headerLength;
+    private ChunkHeader header;
+    private ByteBuffer body;
+    private long readPauseNanos;
+
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    private volatile long lastUsed;
+
+    static class PendingWrite {
+        final ByteBuffer header;
+        final ChunkRegion region;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        long position;
+        long remaining;
+        FileChannel fileChannel;
+
+        PendingWrite(ByteBuffer header, ChunkRegion region) {
+            this.header = header;
+            this.region = region;
+            this.position = region == null ? 0 : region.position();
+            this.remaining = region == null ? 0 : region.length();
+        }
+    }
+
+    NioConnection(String ip, SocketChannel channel) {
+        this.ip = ip;
+        this.channel = channel;
+        touch();
+    }
+
+    void read(BiConsumer<ChunkHeader, byte[]> frameHandler) throws IOException {
+        if (readState == ReadState.BODY && readBuffer.position() == 0) {
+            if (channel.read(body) == -1) {
+                throw new EOFException();
+            }
+            if (!body.hasRemaining()) {
+                completeFrame(frameHandler);
+            }
+            touch();
+            return;
+        }
+
+        if (channel.read(readBuffer) == -1) {
+            throw new EOFException();
+        }
+        touch();
+
+        readBuffer.flip();
+        try {
+            parseFrames(frameHandler);
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    private void parseFrames(BiConsumer<ChunkHeader, byte[]> frameHandler) throws IOException {
+        while (true) {
+            switch (readState) {
+                case LENGTH -> {
+                    if (readBuffer.remaining() < Integer.BYTES) {
+                        return;
+                    }
+                    headerLength = readBuffer.getInt();
+                    if (headerLength <= 0 || headerLength > ChunkFrame.MAX_HEADER) {
+                        throw new IOException("Invalid frame header length: " + headerLength);
+                    }
+                    readState = ReadState.HEADER;
+                }
+                case HEADER -> {
+                    if (readBuffer.remaining() < headerLength) {
+                        return;
+                    }
+                    header = ChunkFrame.decodeHeader(readBuffer.slice(readBuffer.position(), headerLength));
+                    readBuffer.position(readBuffer.position() + headerLength);
+                    if (!header.type().equals(ChunkFrame.CHUNK_RESULT)) {
+                        throw new IOException("Invalid header: " + header.type());
+                    }
+                    NetworkManager.getInstance().getTcpSocketHandler().checkHeader(header);
+                    body = ByteBuffer.allocate(header.chunkSize());
+                    readState = ReadState.BODY;
+                    readPauseNanos = Math.max(readPauseNanos, BandwidthManager.getInstance().reserveDownload(ip, header.chunkSize()));
+                }
+                case BODY -> {
+                    int length = Math.min(readBuffer.remaining(), body.remaining());
+                    body.put(readBuffer.slice(readBuffer.position(), length));
+                    readBuffer.position(readBuffer.position() + length);
+                    if (body.hasRemaining()) {
+                        return;
+                    }
+                    completeFrame(frameHandler);
+                }
+            }
+        }
+    }
+
+    private void completeFrame(BiConsumer<ChunkHeader, byte[]> frameHandler) {
+        frameHandler.accept(header, body.array());
+        header = null;
+        body = null;
+        readState = ReadState.LENGTH;
+    }
+
+    long takeReadPause() {
+        long pause = readPauseNanos;
+        readPauseNanos = 0;
+        return pause;
+    }
+
+    void enqueue(PendingWrite write) {
+        writeQueue.add(write);
+    }
+
+    boolean write() throws IOException {
+        PendingWrite write;
+        while ((write = writeQueue.peek()) != null) {
+            channel.write(write.header);
+            if (write.header.hasRemaining()) {
+                return false;
+            }
+
+            if (write.fileChannel == null && write.remaining > 0) {
+                write.fileChannel = FileChannel.open(write.region.file().toPath(), StandardOpenOption.READ);
+            }
+
+            while (write.remaining > 0) {
+                long sent = write.fileChannel.transferTo(write.position, write.remaining, channel);
+                if (sent <= 0) {
+                    if (write.position >= write.fileChannel.size()) {
+                        throw new EOFException("Chunk region exceeds file: " + write.region);
+                    }
+                    return false;
+                }
+                write.position += sent;
+                write.remaining -= sent;
+            }
+
+            if (write.fileChannel != null) {
+                write.fileChannel.close();
+            }
+            writeQueue.poll();
+            write.done.complete(null);
+            touch();
+        }
+        return true;
+    }
+
+    boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    void failPendingWrites(IOException cause) {
+        PendingWrite write;
+        while ((write = writeQueue.poll()) != null) {
+            if (write.fileChannel != null) {
+                try {
+                    write.fileChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            write.done.completeExceptionally(cause);
+        }
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    long getIdleTime() {
+        return System.currentTimeMillis() - lastUsed;
+    }
+
+    public String toString() {
+        return ip + ":" + channel.socket().getPort();
+    }
+}
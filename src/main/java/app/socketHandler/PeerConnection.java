@@ -0,0 +1,95 @@
+package app.socketHandler;
+
+import app.dto.ChunkRegion;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class PeerConnection {
+    private final String ip;
+    private final SocketChannel channel;
+    private final DataInputStream dis;
+    private volatile long lastUsed;
+    private final ReentrantLock writeLock = new ReentrantLock(); // not synchronized, a virtual thread blocked in a socket write must not pin its carrier
+
+    public PeerConnection(String ip, SocketChannel channel) throws IOException {
+        this.ip = ip;
+        this.channel = channel;
+        this.dis = new DataInputStream(new BufferedInputStream(channel.socket().getInputStream()));
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    public void writeChunk(ByteBuffer header, ChunkRegion region) throws IOException {
+        writeLock.lock();
+        try {
+            writeFrame(header, region);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeFrame(ByteBuffer header, ChunkRegion region) throws IOException {
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        if (region == null) {
+            touch();
+            return;
+        }
+
+        try (FileChannel fileChannel = FileChannel.open(region.file().toPath(), StandardOpenOption.READ)) {
+            long position = region.position();
+            long remaining = region.length();
+
+            while (remaining > 0) {
+                long sent = fileChannel.transferTo(position, remaining, channel);
+                if (sent <= 0 && position >= fileChannel.size()) {
+                    throw new EOFException("Chunk region exceeds file: " + region);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+        touch();
+    }
+
+    public void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    public long getIdleTime() {
+        return System.currentTimeMillis() - lastUsed;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close connection to " + ip + ": " + e.getMessage());
+        }
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public DataInputStream getInputStream() {
+        return dis;
+    }
+
+    public String toString() {
+        return ip + ":" + channel.socket().getPort();
+    }
+}
@@ -1,73 +1,192 @@
 package app.socketHandler;
 
 import app.Peer;
+import app.dto.ChunkHeader;
+import app.dto.ChunkId;
+import app.dto.ChunkRegion;
+import app.dto.FileDTO;
+import app.dto.FileId;
+import app.manager.BandwidthManager;
+import app.manager.ConfigManager;
+import app.manager.ConnectionManager;
 import app.manager.FileManager;
 import app.manager.NetworkManager;
+import app.manager.PeerScoreManager;
+import app.util.ChunkCompression;
+import app.util.FrameChecksum;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.Socket;
-import java.util.Arrays;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TcpSocketHandler {
 
     final private Peer peer = NetworkManager.getInstance().getPeer();
+    final private byte checksumType = FrameChecksum.fromName(ConfigManager.getInstance().getString("p2p.checksum", "crc32c"));
+    private final ConcurrentHashMap<FileId, ConcurrentHashMap<Integer, Long>> checksums = new ConcurrentHashMap<>(); // chunk contents never change for a given file hash; dropped when the file is unshared
 
-    public void processResponse(Socket clientSocket) throws Exception {
-        DataInputStream dis = new DataInputStream(clientSocket.getInputStream());
-        chunkResultHandler(dis);
+    public void processResponse(PeerConnection connection) {
+        try {
+            while (connection.isOpen()) {
+                chunkResultHandler(connection);
+                connection.touch();
+            }
+        } catch (EOFException | SocketException | ClosedChannelException e) {
+            System.out.println("TCP connection closed: " + connection);
+        } catch (Exception e) {
+            System.err.println("Error on TCP connection " + connection + ": " + e.getMessage());
+        } finally {
+            ConnectionManager.getInstance().closeConnection(connection);
+        }
     }
 
-    public void sendChunk(String fileHash, int index, String ip, int port) throws IOException {
-        byte[] chunkData = FileManager.getInstance().getChunkData(fileHash, index);
-        int chunkSize = chunkData.length;
-        String chunkHash = peer.getChunkHash(fileHash, index);
+    public void sendChunk(FileId fileHash, int index, String ip, int port) throws IOException {
+        sendChunk(fileHash, index, ip, port, false);
+    }
 
-        try (Socket socket = new Socket(ip, port)) {
-            socket.setSendBufferSize(chunkSize + 1024);
-            DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
+    public void sendChunk(FileId fileHash, int index, String ip, int port, boolean compressionAccepted) throws IOException {
+        ChunkRegion region = FileManager.getInstance().getChunkRegion(fileHash, index);
+        int chunkSize = region.length();
+        ChunkId chunkHash = peer.getChunkHash(fileHash, index);
+        byte[] proof = FileManager.getInstance().getChunkProof(fileHash, index);
 
-            dos.writeUTF("CHUNK_RESULT");
-            dos.writeUTF(fileHash);
-            dos.writeInt(index);
-            dos.writeUTF(chunkHash);
-            dos.writeInt(chunkSize);
-            dos.write(chunkData);
+        try {
+            ByteBuffer header = null;
+            FileDTO file = fileOf(fileHash);
+            String fileType = file != null ? file.fileType() : "";
 
-            System.out.println("Sent chunk result to: " + ip + ":" + port + " (" + fileHash + ", " + index + ", " + chunkHash + ", " + chunkSize + ")");
-            dos.flush();
-            dos.close();
+            if (compressionAccepted && !ChunkCompression.isCompressedType(fileType)) {
+                byte[] chunkData = FileManager.getInstance().getChunkData(fileHash, index);
+                byte[] compressed = ChunkCompression.isWorthCompressing(fileType, chunkData) ? ChunkCompression.compress(chunkData) : null;
+                if (compressed != null) {
+                    long checksum = FrameChecksum.compute(checksumType, ByteBuffer.wrap(compressed));
+                    header = ChunkFrame.encodeFrame(fileHash, index, chunkHash, ChunkCompression.DEFLATE, chunkSize, checksumType, checksum, proof, compressed);
+                    region = null;
+                    chunkSize = compressed.length;
+                }
+            }
+
+            if (header == null) {
+                header = ChunkFrame.encodeHeader(fileHash, index, chunkHash, chunkSize, checksumType, checksumRegion(fileHash, index, region), proof);
+            }
+
+            BandwidthManager.getInstance().acquireUpload(ip, chunkSize);
+            NetworkManager.getInstance().getChunkTransport().sendChunk(ip, port, header, region);
 
+            System.out.println("Sent chunk result to: " + ip + ":" + port + " (" + fileHash + ", " + index + ", " + chunkHash + ", " + chunkSize + ")");
         } catch (IOException e) {
             System.err.println("Failed to send chunk result");
         }
     }
 
-    private void chunkResultHandler(DataInputStream dis) throws Exception {
-        String header = dis.readUTF();
-        if (!header.equals("CHUNK_RESULT")) {
-            System.err.println("Invalid header: " + header);
-            return;
+    private void chunkResultHandler(PeerConnection connection) throws Exception {
+        DataInputStream dis = connection.getInputStream();
+        ChunkHeader header = ChunkFrame.readHeader(dis);
+        if (!header.type().equals(ChunkFrame.CHUNK_RESULT)) {
+            throw new IOException("Invalid header: " + header.type());
         }
-        String fileHash = dis.readUTF();
-        int index = dis.readInt();
-        String chunkHash = dis.readUTF();
-        int chunkSize = dis.readInt();
-        byte[] chunkData = new byte[chunkSize];
+        checkHeader(header);
+        BandwidthManager.getInstance().acquireDownload(connection.getIp(), header.chunkSize());
+        byte[] chunkData = new byte[header.chunkSize()];
         dis.readFully(chunkData);
 
+        handleChunk(connection.getIp(), header, chunkData);
+    }
+
+    public void checkHeader(ChunkHeader header) throws IOException { // a remote header may not make us allocate more than one chunk of the file
+        FileDTO file = fileOf(header.fileHash());
+        int limit = file != null ? file.chunkSize() : FileManager.MAX_CHUNK_SIZE;
+        if (header.chunkSize() < 0 || header.chunkSize() > limit || header.rawSize() < 0 || header.rawSize() > limit) {
+            throw new IOException("Chunk size out of bounds (limit " + limit + "): " + header);
+        }
+    }
+
+    private FileDTO fileOf(FileId fileHash) {
+        FileDTO file = peer.getUploadedFiles().get(fileHash);
+        return file != null ? file : peer.getFiles().get(fileHash);
+    }
+
+    private long checksumRegion(FileId fileHash, int index, ChunkRegion region) throws IOException {
+        if (checksumType == FrameChecksum.NONE) {
+            return 0;
+        }
+
+        Long cached = checksumsOf(fileHash).get(index);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (FileChannel channel = FileChannel.open(region.file().toPath(), StandardOpenOption.READ)) {
+            long checksum = FrameChecksum.compute(checksumType, channel.map(FileChannel.MapMode.READ_ONLY, region.position(), region.length()));
+            checksumsOf(fileHash).put(index, checksum);
+            return checksum;
+        }
+    }
+
+    private ConcurrentHashMap<Integer, Long> checksumsOf(FileId fileHash) {
+        return checksums.computeIfAbsent(fileHash, _ -> new ConcurrentHashMap<>());
+    }
+
+    public void forgetChecksums(FileId fileHash) {
+        checksums.remove(fileHash);
+    }
+
+    public void handleChunk(String ip, ChunkHeader header, byte[] chunkData) throws Exception {
+        FileId fileHash = header.fileHash();
+        int index = header.index();
+        ChunkId chunkHash = header.chunkHash();
+
+        int received = chunkData.length;
+
+        if (!FrameChecksum.matches(header.checksumType(), header.checksum(), chunkData)) {
+            System.err.println("Transport checksum mismatch for chunk " + index + " from " + ip);
+            PeerScoreManager.getInstance().failure(ip);
+            return;
+        }
+
+        if (header.codec() == ChunkCompression.DEFLATE) {
+            try {
+                chunkData = ChunkCompression.decompress(chunkData, header.rawSize());
+            } catch (IOException e) {
+                PeerScoreManager.getInstance().failure(ip);
+                throw e;
+            }
+        }
+        else if (header.codec() != ChunkCompression.NONE) {
+            System.err.println("Unsupported chunk codec: " + header.codec());
+            return;
+        }
+
         if(peer.hasChunk(fileHash, index)) {
             System.out.println("Chunk " + index + " already owned. Skipping...");
+            PeerScoreManager.getInstance().chunkDelivered(ip, received);
             return;
         }
 
-        if (!chunkHash.equals(FileManager.getInstance().getHashOfData(chunkData))) {
+        if (!chunkHash.equals(FileManager.getInstance().getHashOfData(chunkData))) { // the only SHA-256 pass over a received chunk
             System.err.println("Invalid chunk data");
+            PeerScoreManager.getInstance().failure(ip);
             return;
         }
 
-        FileManager.getInstance().saveChunkData(fileHash, chunkHash, index, chunkData);
+        if (!FileManager.getInstance().verifyChunkProof(fileHash, index, chunkHash, header.proof())) {
+            System.err.println("Chunk " + index + " does not match the Merkle root of " + fileHash);
+            PeerScoreManager.getInstance().failure(ip);
+            return;
+        }
+
+        PeerScoreManager.getInstance().chunkDelivered(ip, received);
+        if (header.codec() == ChunkCompression.NONE && header.checksumType() == checksumType) {
+            checksumsOf(fileHash).put(index, header.checksum());
+        }
+
+        FileManager.getInstance().saveChunkData(fileHash, chunkHash, index, chunkData, header.proof());
 
         System.out.println("Received "+ index + ". chunk result");
     }
@@ -1,18 +1,39 @@
 package app.socketHandler;
 
 import app.dto.FileDTO;
+import app.manager.ChunkAvailability;
+import app.manager.ConfigManager;
+import app.manager.DhtManager;
+import app.manager.ExecutorManager;
+import app.manager.FileManager;
 import app.manager.NetworkManager;
 import app.Peer;
+import app.dto.FileId;
 import app.dto.PeerDTO;
+import app.util.ChunkBitmap;
+import app.util.ChunkCompression;
+import app.util.ChunkIdArray;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class UdpSocketHandler {
 
@@ -22,33 +43,174 @@ public class UdpSocketHandler {
     private final ExecutorService requestExecutor;
 
     final int MAX_TTL = 3;
+    final int REQUEST_TTL = DhtManager.isFloodEnabled() ? MAX_TTL : 1;
+    final int MAX_RANGES_LENGTH = 600;
+    final long CANCEL_EXPIRY = 30_000;
+    final long SEEN_EXPIRY = ConfigManager.getInstance().getLong("p2p.flood.seen.expiry", 60_000);
+    final boolean COMPRESSION_ENABLED = ConfigManager.getInstance().getBoolean("p2p.compression", true);
+    final int WIRE_VERSION = Math.min(ConfigManager.getInstance().getInt("p2p.wire.version", WireCodec.VERSION), WireCodec.VERSION);
+
+    private final ConcurrentHashMap<String, Long> cancelledChunks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> seenRequests = new ConcurrentHashMap<>();
+    private volatile long lastSeenPrune;
+    private final ConcurrentHashMap<PeerDTO, Integer> wireVersions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PeerDTO, CompletableFuture<Boolean>> negotiations = new ConcurrentHashMap<>();
     static boolean isSentFileRequest = false;
 
     public UdpSocketHandler(DatagramSocket udpSocket) {
         this.udpSocket = udpSocket;
-        requestExecutor = Executors.newFixedThreadPool(5);
+        requestExecutor = ExecutorManager.getInstance().getExecutor("udp-request", 5);
     }
 
     public void processResponse(DatagramPacket packet) throws IOException {
+        if (WireCodec.isBinary(packet.getData(), packet.getOffset(), packet.getLength())) {
+            processBinaryResponse(packet);
+            return;
+        }
+
         String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
         System.out.println("UDP Received packet from: " + packet.getAddress() + ":" + packet.getPort() + " " + "Message: " + new String(packet.getData(), 0, packet.getLength()) + "\n");
 
-        if (message.startsWith("CHUNK_REQUEST")) {  // CHUNK_REQUEST:hash=x:index=x:ip=x.x.x.x:port=xxxx:ttl=x:visited=ip:port,...
+        try {
+            processTextResponse(packet, message);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed packet: " + message, e);
+        }
+    }
+
+    private void processTextResponse(DatagramPacket packet, String message) throws IOException {
+        if (message.startsWith("CHUNK_REQUEST")) {  // CHUNK_REQUEST:hash=x:index=x:ip=x.x.x.x:port=xxxx:ttl=x:rid=x or :visited=ip:port,...
             chunkRequestHandler(packet);
         }
+        else if (message.startsWith("CHUNK_BATCH_REQUEST")) { // CHUNK_BATCH_REQUEST:hash=x:ranges=a-b,c:ip=x.x.x.x:port=xxxx:ttl=x:codecs=x,...:rid=x or :visited=ip:port,...
+            chunkBatchRequestHandler(packet);
+        }
+        else if (message.startsWith("CHUNK_CANCEL")) { // CHUNK_CANCEL:hash=x:ranges=a-b,c:ip=x.x.x.x
+            chunkCancelHandler(packet);
+        }
         else if (message.startsWith("FRIEND_REQUEST")) { // FRIEND_REQUEST
             friendRequestHandler(packet);
         }
-        else if (message.startsWith("FILE_NOTIFICATION")) { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx
+        else if (message.startsWith("FILE_NOTIFICATION")) { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
             fileNotificationHandler(packet);
         }
         else if (message.startsWith("FILE_INFO_REQUEST")) { // FILE_INFO_REQUEST
             sendFilesInfoForNewPeer(new PeerDTO(packet.getAddress().getHostAddress(), packet.getPort()));
         }
+        else if (message.startsWith("WIRE_HELLO")) { // WIRE_HELLO:version=x
+            wireHelloHandler(packet, message);
+        }
+        else if (message.startsWith("BITFIELD_REQUEST")) { // BITFIELD_REQUEST:hash=x
+            handleBitfieldRequest(FileId.fromHex(getField(message.split(":"), "hash")), senderOf(packet));
+        }
+        else if (message.startsWith("BITFIELD")) { // BITFIELD:hash=x:chunkCount=x:complete=1 or BITFIELD:hash=x:chunkCount=x:from=x:bits=base64
+            bitfieldHandler(packet, message);
+        }
+        else if (message.startsWith("HAVE")) { // HAVE:hash=x:chunkCount=x:index=x
+            String[] parts = message.split(":");
+            ChunkAvailability.getInstance().haveReceived(FileId.fromHex(getField(parts, "hash")), senderOf(packet), Integer.parseInt(getField(parts, "chunkCount")), Integer.parseInt(getField(parts, "index")));
+        }
+    }
+
+    private PeerDTO senderOf(DatagramPacket packet) {
+        return new PeerDTO(packet.getAddress().getHostAddress(), packet.getPort());
+    }
+
+    private void processBinaryResponse(DatagramPacket packet) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+        PeerDTO sender = senderOf(packet);
+        int version = WireCodec.readVersion(in);
+        recordWireVersion(sender, version);
+
+        try {
+            byte type = WireCodec.readType(in);
+            System.out.println("UDP Received binary packet from: " + sender + " type: " + type + "\n");
+
+            switch (type) {
+                case WireCodec.CHUNK_REQUEST -> binaryChunkRequestHandler(in, version);
+                case WireCodec.CHUNK_BATCH_REQUEST -> binaryChunkBatchRequestHandler(in, version);
+                case WireCodec.CHUNK_CANCEL -> binaryChunkCancelHandler(in);
+                case WireCodec.FRIEND_REQUEST -> friendRequestHandler(packet);
+                case WireCodec.FILE_NOTIFICATION -> binaryFileNotificationHandler(in);
+                case WireCodec.FILE_INFO_REQUEST -> sendFilesInfoForNewPeer(sender);
+                case WireCodec.BITFIELD_REQUEST -> handleBitfieldRequest(WireCodec.readFileId(in), sender);
+                case WireCodec.BITFIELD -> binaryBitfieldHandler(in, sender);
+                case WireCodec.HAVE -> ChunkAvailability.getInstance().haveReceived(WireCodec.readFileId(in), sender, in.getInt(), in.getInt());
+                case WireCodec.DHT_PING, WireCodec.DHT_PONG, WireCodec.DHT_FIND_NODE, WireCodec.DHT_NODES,
+                     WireCodec.DHT_FIND_VALUE, WireCodec.DHT_VALUES, WireCodec.DHT_STORE -> DhtManager.getInstance().handle(type, in, sender);
+                default -> System.err.println("Unknown wire message type " + type + " from: " + sender);
+            }
+        } catch (BufferUnderflowException e) {
+            throw WireCodec.malformed(e);
+        }
+    }
+
+    private void wireHelloHandler(DatagramPacket packet, String message) throws IOException { // WIRE_HELLO:version=x
+        if (WIRE_VERSION < 1) {
+            return;
+        }
+
+        PeerDTO sender = senderOf(packet);
+        if (recordWireVersion(sender, Integer.parseInt(getField(message.split(":"), "version")))) {
+            sendWireHello(sender.ip(), sender.port());
+        }
+    }
+
+    private boolean recordWireVersion(PeerDTO sender, int version) {
+        boolean added = wireVersions.putIfAbsent(sender, Math.min(version, WIRE_VERSION)) == null;
+        CompletableFuture<Boolean> negotiation = negotiations.remove(sender);
+        if (negotiation != null) {
+            negotiation.complete(speaksBinary(sender));
+        }
+        return added;
+    }
+
+    public boolean speaksBinary(PeerDTO target) {
+        return wireVersions.getOrDefault(target, 0) >= 1;
+    }
+
+    public CompletableFuture<Boolean> negotiateBinary(PeerDTO target, long timeout) { // completes true once the peer has answered a WIRE_HELLO, false if it never does
+        if (WIRE_VERSION < 1 || speaksBinary(target)) {
+            return CompletableFuture.completedFuture(WIRE_VERSION >= 1);
+        }
+
+        CompletableFuture<Boolean> negotiation = negotiations.computeIfAbsent(target, _ -> {
+            CompletableFuture<Boolean> created = new CompletableFuture<>();
+            created.completeOnTimeout(false, timeout, TimeUnit.MILLISECONDS).whenComplete((_, _) -> negotiations.remove(target, created));
+            return created;
+        });
+        try {
+            sendWireHello(target.ip(), target.port());
+        } catch (IOException e) {
+            negotiation.complete(false);
+        }
+        if (speaksBinary(target)) { // answered between the first check and the map insert
+            negotiation.complete(true);
+        }
+        return negotiation;
+    }
+
+    private int wireVersion(PeerDTO target) {
+        return wireVersions.getOrDefault(target, 0);
+    }
+
+    private Map<Boolean, List<PeerDTO>> groupByWireFormat(Collection<PeerDTO> targets) {
+        return targets.stream().collect(Collectors.partitioningBy(this::speaksBinary));
+    }
+
+    private Map<Integer, List<PeerDTO>> groupByWireVersion(Collection<PeerDTO> targets) {
+        return targets.stream().collect(Collectors.groupingBy(this::wireVersion));
+    }
+
+    private void sendWireHello(String ip, int port) throws IOException {
+        if (WIRE_VERSION < 1) {
+            return;
+        }
+        sendPacket(("WIRE_HELLO:version=" + WIRE_VERSION).getBytes(), ip, port);
     }
 
-    protected void spreadChunkRequest(String hash, int index, String requesterIP, int requesterPort, int ttl, HashSet<PeerDTO> visited) throws IOException {
+    protected void spreadChunkRequest(FileId hash, int index, String requesterIP, int requesterPort, int ttl, long requestId, HashSet<PeerDTO> visited) throws IOException {
         System.out.println("Spreading chunk request for: " + hash + " index: " + index + " ttl: " + ttl);
 
         peer.addPeer(new PeerDTO(requesterIP, requesterPort));
@@ -59,115 +221,613 @@ public class UdpSocketHandler {
             return;
         }
 
-        StringBuilder visitedInfo = new StringBuilder();
-        for (PeerDTO v : visited) {
-            visitedInfo.append(v.ip()).append(":").append(v.port()).append(",");
-        }
-
-        String message = "CHUNK_REQUEST" +
-                ":hash=" + hash +
-                ":index=" + index +
-                ":ip=" + requesterIP +
-                ":port=" + requesterPort +
-                ":ttl=" + ttl +
-                ":visited=" + (!visited.isEmpty() ? visitedInfo.substring(0, visitedInfo.length() - 1) : "");
+        PeerDTO requester = new PeerDTO(requesterIP, requesterPort);
+        List<PeerDTO> unvisited = peer.getPeersSnapshot().stream().filter(p -> !visited.contains(p) && !p.equals(requester)).toList();
 
-        byte[] data = message.getBytes();
-
-        for(PeerDTO peer : peer.getPeers()) {
-            if (visited.contains(peer)) {
+        for (Map.Entry<Integer, List<PeerDTO>> group : groupByWireVersion(unvisited).entrySet()) {
+            if (group.getKey() >= 1) {
+                ByteBuffer data = WireCodec.encodeChunkRequest(WireCodec.buffer(), group.getKey(), hash, index, requesterIP, requesterPort, ttl, requestId, visited);
+                try {
+                    for (PeerDTO peer : group.getValue()) {
+                        System.out.println("Sending chunk request to: " + peer.ip() + ":" + peer.port());
+                        sendPacket(data, peer.ip(), peer.port());
+                    }
+                } finally {
+                    WireCodec.release(data);
+                }
                 continue;
             }
 
-            System.out.println("Sending chunk request to: " + peer.ip() + ":" + peer.port());
-            sendPacket(data, peer.ip(), peer.port());
+            String message = "CHUNK_REQUEST" +
+                    ":hash=" + hash +
+                    ":index=" + index +
+                    ":ip=" + requesterIP +
+                    ":port=" + requesterPort +
+                    ":ttl=" + ttl +
+                    requestTag(requestId, visited);
+
+            byte[] data = message.getBytes();
+
+            for (PeerDTO peer : group.getValue()) {
+                System.out.println("Sending chunk request to: " + peer.ip() + ":" + peer.port());
+                sendPacket(data, peer.ip(), peer.port());
+            }
         }
     }
 
-    public void sendChunkRequest(String hash, int index) throws IOException { // CHUNK_REQUEST:hash=x:index:xip=x.x.x.x:port=xxxx:ttl=x:visited=ip:port,...
-        String message = "CHUNK_REQUEST" +
-                ":hash=" + hash +
-                ":index=" + index +
-                ":ip=" + peer.getIp() +
-                ":port=" + peer.getPort() +
-                ":ttl=" + MAX_TTL +
-                ":visited=" + peer.getIp() + ":" + peer.getPort();
+    private void chunkRequestHandler(DatagramPacket packet) throws IOException { // CHUNK_REQUEST:hash=x:index=x:ip=x.x.x.x:port=xxxx:ttl=x:rid=x or :visited=ip:port,...
+        String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
-        byte[] data = message.getBytes();
+        String[] parts = message.split(":");
+        FileId fileHash = FileId.fromHex(parts[1].split("=")[1]);
+        int index = Integer.parseInt(parts[2].split("=")[1]);
+        String ip = parts[3].split("=")[1];
+        int port = Integer.parseInt(parts[4].split("=")[1]);
+        int ttl = Integer.parseInt(parts[5].split("=")[1]);
 
-        if (peer.getPeers().isEmpty()) {
-            System.out.println("\nNo peers to send chunk request to." + " Message: " + message);
-            // todo: fix there
+        handleChunkRequest(fileHash, index, ip, port, ttl, parseRequestId(parts), parseVisited(message));
+    }
+
+    private void binaryChunkRequestHandler(ByteBuffer in, int version) throws IOException { // [fileHash, index, ip, port, ttl, requestId] or [..., ttl, visited] before version 2
+        FileId fileHash = WireCodec.readFileId(in);
+        int index = in.getInt();
+        String ip = WireCodec.readAddress(in);
+        int port = WireCodec.readPort(in);
+        int ttl = in.get();
+
+        handleChunkRequest(fileHash, index, ip, port, ttl, WireCodec.readRequestId(in, version), WireCodec.readVisited(in, version));
+    }
+
+    private void handleChunkRequest(FileId fileHash, int index, String ip, int port, int ttl, long requestId, List<PeerDTO> visitedPeers) throws IOException {
+        if (!markSeen(requestId)) {
+            System.out.println("Dropping duplicate chunk request " + Long.toHexString(requestId) + " from: " + ip + ":" + port);
             return;
         }
 
-        HashSet<PeerDTO> peers = peer.getPeers();
-
-        for (PeerDTO peer : peers) {
+        if (peer.hasChunk(fileHash, index)) { // off the listener thread, an upload cap may park the sender until tokens refill
             requestExecutor.submit(() -> {
                 try {
-                    System.out.println("Sending Chunk Request to: " + peer.ip() + ":" + peer.port() + " Message: " + message);
-                    sendPacket(data, peer.ip(), peer.port());
+                    NetworkManager.getInstance().getTcpSocketHandler().sendChunk(fileHash, index, ip, NetworkManager.TCP_PORT);
                 } catch (IOException e) {
-                    System.err.println("Failed to send chunk request to: " + peer.ip() + ":" + peer.port() + " Message: " + message);
+                    System.err.println("Failed to send chunk " + index + " to: " + ip + " (" + e.getMessage() + ")");
                 }
             });
         }
+        else {
+            HashSet<PeerDTO> visited = requestId != 0 ? selfVisited() : mergeVisited(visitedPeers);
 
+            if (ttl == 1) {
+                return;
+            }
+
+            spreadChunkRequest(fileHash, index, ip, port, ttl - 1, requestId, visited);
+        }
+
+        peer.addPeer(new PeerDTO(ip, port));
+    }
+
+    public void sendChunkBatchRequest(FileId hash, List<Integer> indices) throws IOException {
+        sendChunkBatchRequest(hash, indices, peer.getPeersSnapshot());
+    }
+
+    public void sendChunkBatchRequest(FileId hash, List<Integer> indices, Collection<PeerDTO> targets) throws IOException { // CHUNK_BATCH_REQUEST:hash=x:ranges=a-b,c:ip=x.x.x.x:port=xxxx:ttl=x:codecs=x,...:rid=x
+        if (targets.isEmpty()) {
+            System.out.println("\nNo peers to send chunk batch request to. Hash: " + hash);
+            return;
+        }
+
+        Map<Boolean, List<PeerDTO>> byFormat = groupByWireFormat(targets);
+
+        if (!byFormat.get(true).isEmpty()) {
+            List<PeerDTO> self = List.of(new PeerDTO(peer.getIp(), peer.getPort()));
+            Map<Integer, List<PeerDTO>> byVersion = groupByWireVersion(byFormat.get(true));
+            for (List<WireCodec.Range> ranges : WireCodec.toRanges(indices, WireCodec.MAX_RANGES)) {
+                long requestId = newRequestId();
+                for (Map.Entry<Integer, List<PeerDTO>> group : byVersion.entrySet()) {
+                    ByteBuffer data = WireCodec.encodeChunkBatchRequest(WireCodec.buffer(), group.getKey(), hash, ranges, peer.getIp(), peer.getPort(), REQUEST_TTL, localCodecs(), requestId, self);
+                    submitPackets(data, group.getValue(), "Chunk Batch Request " + hash + " (" + ranges.size() + " ranges)");
+                }
+            }
+        }
+
+        if (!byFormat.get(false).isEmpty()) {
+            for (String ranges : encodeRanges(indices)) {
+                String message = "CHUNK_BATCH_REQUEST" +
+                        ":hash=" + hash +
+                        ":ranges=" + ranges +
+                        ":ip=" + peer.getIp() +
+                        ":port=" + peer.getPort() +
+                        ":ttl=" + REQUEST_TTL +
+                        ":codecs=" + (COMPRESSION_ENABLED ? ChunkCompression.DEFLATE_NAME : "") +
+                        ":rid=" + Long.toHexString(newRequestId());
+
+                submitPackets(ByteBuffer.wrap(message.getBytes()), byFormat.get(false), message);
+            }
+        }
     }
 
-    private void chunkRequestHandler(DatagramPacket packet) throws IOException { // CHUNK_REQUEST:hash=x:index=x:ip=x.x.x.x:port=xxxx:ttl=x:visited=ip:port,...
+    private void submitPackets(ByteBuffer data, List<PeerDTO> targets, String description) { // one task sends to every target, then the buffer goes back to the pool
+        requestExecutor.submit(() -> {
+            try {
+                for (PeerDTO peer : targets) {
+                    try {
+                        System.out.println("Sending to: " + peer.ip() + ":" + peer.port() + " Message: " + description);
+                        sendPacket(data, peer.ip(), peer.port());
+                    } catch (IOException e) {
+                        System.err.println("Failed to send to: " + peer.ip() + ":" + peer.port() + " Message: " + description);
+                    }
+                }
+            } finally {
+                WireCodec.release(data);
+            }
+        });
+    }
+
+    private byte localCodecs() {
+        return COMPRESSION_ENABLED ? (byte) (1 << ChunkCompression.DEFLATE) : 0;
+    }
+
+    private void spreadChunkBatchRequest(FileId hash, int[] indices, String requesterIP, int requesterPort, int ttl, byte codecs, long requestId, HashSet<PeerDTO> visited) throws IOException {
+        System.out.println("Spreading chunk batch request for: " + hash + " chunks: " + indices.length + " ttl: " + ttl);
+
+        peer.addPeer(new PeerDTO(requesterIP, requesterPort));
+        NetworkManager.getInstance().getUdpSocketHandler().sendFriendRequest(requesterIP, requesterPort);
+
+        if (peer.getPeers().isEmpty()) {
+            System.out.println("No peers to send chunk batch request to.");
+            return;
+        }
+
+        PeerDTO requester = new PeerDTO(requesterIP, requesterPort);
+        List<PeerDTO> unvisited = peer.getPeersSnapshot().stream().filter(p -> !visited.contains(p) && !p.equals(requester)).toList();
+        Map<Boolean, List<PeerDTO>> byFormat = groupByWireFormat(unvisited);
+
+        if (!byFormat.get(true).isEmpty()) {
+            List<List<WireCodec.Range>> packets = WireCodec.toRanges(indices, WireCodec.MAX_RANGES);
+            for (Map.Entry<Integer, List<PeerDTO>> group : groupByWireVersion(byFormat.get(true)).entrySet()) {
+                for (int i = 0; i < packets.size(); i++) {
+                    ByteBuffer data = WireCodec.encodeChunkBatchRequest(WireCodec.buffer(), group.getKey(), hash, packets.get(i), requesterIP, requesterPort, ttl, codecs, packetRequestId(requestId, i), visited);
+                    try {
+                        for (PeerDTO peer : group.getValue()) {
+                            System.out.println("Sending chunk batch request to: " + peer.ip() + ":" + peer.port());
+                            sendPacket(data, peer.ip(), peer.port());
+                        }
+                    } finally {
+                        WireCodec.release(data);
+                    }
+                }
+            }
+        }
+
+        if (!byFormat.get(false).isEmpty()) {
+            List<String> packets = encodeRanges(indices);
+            for (int i = 0; i < packets.size(); i++) {
+                String message = "CHUNK_BATCH_REQUEST" +
+                        ":hash=" + hash +
+                        ":ranges=" + packets.get(i) +
+                        ":ip=" + requesterIP +
+                        ":port=" + requesterPort +
+                        ":ttl=" + ttl +
+                        ":codecs=" + ((codecs & (1 << ChunkCompression.DEFLATE)) != 0 ? ChunkCompression.DEFLATE_NAME : "") +
+                        requestTag(requestId == 0 ? 0 : packetRequestId(requestId, i), visited);
+
+                byte[] data = message.getBytes();
+
+                for (PeerDTO peer : byFormat.get(false)) {
+                    System.out.println("Sending chunk batch request to: " + peer.ip() + ":" + peer.port());
+                    sendPacket(data, peer.ip(), peer.port());
+                }
+            }
+        }
+    }
+
+    private void chunkBatchRequestHandler(DatagramPacket packet) throws IOException { // CHUNK_BATCH_REQUEST:hash=x:ranges=a-b,c:ip=x.x.x.x:port=xxxx:ttl=x:codecs=x,...:rid=x or :visited=ip:port,...
         String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
         String[] parts = message.split(":");
-        String fileHash = parts[1].split("=")[1];
-        int index = Integer.parseInt(parts[2].split("=")[1]);
+        FileId fileHash = FileId.fromHex(parts[1].split("=")[1]);
+        int[] indices = decodeRanges(parts[2].split("=")[1], chunkLimit(fileHash));
         String ip = parts[3].split("=")[1];
         int port = Integer.parseInt(parts[4].split("=")[1]);
         int ttl = Integer.parseInt(parts[5].split("=")[1]);
+        String codecs = getField(parts, "codecs");
+        byte codecMask = Arrays.asList(codecs.split(",")).contains(ChunkCompression.DEFLATE_NAME) ? (byte) (1 << ChunkCompression.DEFLATE) : 0;
+
+        handleChunkBatchRequest(fileHash, indices, ip, port, ttl, codecMask, parseRequestId(parts), parseVisited(message));
+    }
 
-        if (peer.hasChunk(fileHash, index)) {
-            NetworkManager.getInstance().getTcpSocketHandler().sendChunk(fileHash, index, ip, NetworkManager.TCP_PORT);
+    private void binaryChunkBatchRequestHandler(ByteBuffer in, int version) throws IOException { // [fileHash, ranges, ip, port, ttl, codecs, requestId] or [..., codecs, visited] before version 2
+        FileId fileHash = WireCodec.readFileId(in);
+        int[] indices = WireCodec.readIndices(in, chunkLimit(fileHash));
+        String ip = WireCodec.readAddress(in);
+        int port = WireCodec.readPort(in);
+        int ttl = in.get();
+        byte codecs = in.get();
+
+        handleChunkBatchRequest(fileHash, indices, ip, port, ttl, codecs, WireCodec.readRequestId(in, version), WireCodec.readVisited(in, version));
+    }
+
+    private void handleChunkBatchRequest(FileId fileHash, int[] indices, String ip, int port, int ttl, byte codecs, long requestId, List<PeerDTO> visitedPeers) throws IOException {
+        if (!markSeen(requestId)) {
+            System.out.println("Dropping duplicate chunk batch request " + Long.toHexString(requestId) + " from: " + ip + ":" + port);
+            return;
+        }
+
+        boolean compressionAccepted = COMPRESSION_ENABLED && (codecs & (1 << ChunkCompression.DEFLATE)) != 0;
+
+        int[] held = new int[indices.length];
+        int[] absent = new int[indices.length];
+        int heldCount = 0;
+        int absentCount = 0;
+        for (int index : indices) {
+            if (peer.hasChunk(fileHash, index)) {
+                held[heldCount++] = index;
+            }
+            else {
+                absent[absentCount++] = index;
+            }
+        }
+        int[] owned = Arrays.copyOf(held, heldCount);
+        int[] missing = Arrays.copyOf(absent, absentCount);
+
+        if (owned.length > 0) {
+            requestExecutor.submit(() -> {
+                for (int index : owned) {
+                    if (isCancelled(ip, fileHash, index)) {
+                        System.out.println("Chunk " + index + " cancelled by: " + ip);
+                        continue;
+                    }
+                    try {
+                        NetworkManager.getInstance().getTcpSocketHandler().sendChunk(fileHash, index, ip, NetworkManager.TCP_PORT, compressionAccepted);
+                    } catch (IOException e) {
+                        System.err.println("Failed to send chunk " + index + " to: " + ip + " (" + e.getMessage() + ")");
+                    }
+                }
+            });
+        }
+
+        if (missing.length > 0) {
+            HashSet<PeerDTO> visited = requestId != 0 ? selfVisited() : mergeVisited(visitedPeers);
+
+            if (ttl > 1) {
+                spreadChunkBatchRequest(fileHash, missing, ip, port, ttl - 1, codecs, requestId, visited);
+            }
         }
-        else {
-            HashSet<PeerDTO> visited = new HashSet<>();
-            if (message.contains("visited=")) {
 
-                String[] visitedPeers = message.split("visited=")[1].split(",");
+        peer.addPeer(new PeerDTO(ip, port));
+    }
 
-                for (String visitedPeer : visitedPeers) {
-                    String[] visitedInfo = visitedPeer.split(":");
-                    visited.add(new PeerDTO(visitedInfo[0], Integer.parseInt(visitedInfo[1])));
+    public void sendChunkCancel(FileId hash, List<Integer> indices, Collection<PeerDTO> targets) throws IOException { // CHUNK_CANCEL:hash=x:ranges=a-b,c:ip=x.x.x.x
+        Map<Boolean, List<PeerDTO>> byFormat = groupByWireFormat(targets);
+
+        if (!byFormat.get(true).isEmpty()) {
+            for (List<WireCodec.Range> ranges : WireCodec.toRanges(indices, WireCodec.MAX_RANGES)) {
+                ByteBuffer data = WireCodec.encodeChunkCancel(WireCodec.buffer(), hash, ranges, peer.getIp());
+                try {
+                    for (PeerDTO peer : byFormat.get(true)) {
+                        System.out.println("Sending chunk cancel to: " + peer.ip() + ":" + peer.port() + " Hash: " + hash);
+                        sendPacket(data, peer.ip(), peer.port());
+                    }
+                } finally {
+                    WireCodec.release(data);
                 }
             }
+        }
+
+        if (!byFormat.get(false).isEmpty()) {
+            for (String ranges : encodeRanges(indices)) {
+                String message = "CHUNK_CANCEL" +
+                        ":hash=" + hash +
+                        ":ranges=" + ranges +
+                        ":ip=" + peer.getIp();
 
-            visited.add(new PeerDTO(peer.getIp(), peer.getPort()));
+                byte[] data = message.getBytes();
 
-            for (PeerDTO v : visited) {
-                if (v.ip().equals(peer.getIp()) && v.port() == peer.getPort()) {
+                for (PeerDTO peer : byFormat.get(false)) {
+                    System.out.println("Sending chunk cancel to: " + peer.ip() + ":" + peer.port() + " Message: " + message);
+                    sendPacket(data, peer.ip(), peer.port());
+                }
+            }
+        }
+    }
+
+    private void chunkCancelHandler(DatagramPacket packet) throws IOException { // CHUNK_CANCEL:hash=x:ranges=a-b,c:ip=x.x.x.x
+        String message = new String(packet.getData(), 0, packet.getLength()).trim();
+
+        String[] parts = message.split(":");
+        FileId fileHash = FileId.fromHex(parts[1].split("=")[1]);
+        int[] indices = decodeRanges(parts[2].split("=")[1], chunkLimit(fileHash));
+        String ip = parts[3].split("=")[1];
+
+        handleChunkCancel(fileHash, indices, ip);
+    }
+
+    private void binaryChunkCancelHandler(ByteBuffer in) throws IOException { // [fileHash, ranges, ip]
+        FileId fileHash = WireCodec.readFileId(in);
+        int[] indices = WireCodec.readIndices(in, chunkLimit(fileHash));
+        String ip = WireCodec.readAddress(in);
+
+        handleChunkCancel(fileHash, indices, ip);
+    }
+
+    private void handleChunkCancel(FileId fileHash, int[] indices, String ip) {
+        long now = System.currentTimeMillis();
+        cancelledChunks.values().removeIf(time -> now - time > CANCEL_EXPIRY);
+
+        for (int index : indices) {
+            cancelledChunks.put(ip + ":" + fileHash + ":" + index, now);
+        }
+    }
+
+    private int chunkLimit(FileId fileHash) { // chunk count of the file if known, otherwise the largest count a request may name
+        ChunkIdArray owned = peer.getOwnedChunks().get(fileHash);
+        if (owned != null) {
+            return owned.length();
+        }
+        FileDTO file = peer.getFiles().get(fileHash);
+        return file != null ? file.chunkCount() : WireCodec.MAX_CHUNK_INDEX;
+    }
+
+    private boolean isCancelled(String ip, FileId fileHash, int index) {
+        return cancelledChunks.remove(ip + ":" + fileHash + ":" + index) != null;
+    }
+
+    private long newRequestId() {
+        long requestId;
+        do {
+            requestId = ThreadLocalRandom.current().nextLong();
+        } while (requestId == 0);
+
+        markSeen(requestId);
+        return requestId;
+    }
+
+    private long packetRequestId(long requestId, int packet) { // a forwarded request that no longer fits one packet gets a derived id per extra packet
+        return packet == 0 ? requestId : requestId ^ (packet * 0x9E3779B97F4A7C15L);
+    }
+
+    private boolean markSeen(long requestId) { // false if the request already passed through this peer, 0 marks a request without an id
+        if (requestId == 0) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastSeenPrune > SEEN_EXPIRY) {
+            lastSeenPrune = now;
+            seenRequests.values().removeIf(time -> now - time > SEEN_EXPIRY);
+        }
+        return seenRequests.putIfAbsent(requestId, now) == null;
+    }
+
+    private long parseRequestId(String[] parts) {
+        String requestId = getField(parts, "rid");
+        return requestId.isEmpty() ? 0 : Long.parseUnsignedLong(requestId, 16);
+    }
+
+    private String getField(String[] parts, String key) {
+        for (String part : parts) {
+            if (part.startsWith(key + "=")) {
+                return part.substring(key.length() + 1);
+            }
+        }
+        return "";
+    }
+
+    private List<PeerDTO> parseVisited(String message) {
+        List<PeerDTO> visited = new ArrayList<>();
+        if (message.contains("visited=")) {
+
+            String[] visitedPeers = message.split("visited=")[1].split(",");
+
+            for (String visitedPeer : visitedPeers) {
+                if (visitedPeer.isEmpty()) {
                     continue;
                 }
-                if (!peer.hasPeer(v)) {
-                    NetworkManager.getInstance().getUdpSocketHandler().sendFriendRequest(v.ip(), v.port());
-                    peer.addPeer(v);
+                String[] visitedInfo = visitedPeer.split(":");
+                visited.add(new PeerDTO(visitedInfo[0], Integer.parseInt(visitedInfo[1])));
+            }
+        }
+        return visited;
+    }
+
+    private HashSet<PeerDTO> mergeVisited(List<PeerDTO> visitedPeers) throws IOException {
+        HashSet<PeerDTO> visited = new HashSet<>(visitedPeers);
+        visited.add(new PeerDTO(peer.getIp(), peer.getPort()));
+
+        for (PeerDTO v : visited) {
+            if (v.ip().equals(peer.getIp()) && v.port() == peer.getPort()) {
+                continue;
+            }
+            if (!peer.hasPeer(v)) {
+                NetworkManager.getInstance().getUdpSocketHandler().sendFriendRequest(v.ip(), v.port());
+                peer.addPeer(v);
+            }
+        }
+
+        return visited;
+    }
+
+    private HashSet<PeerDTO> selfVisited() { // markSeen guards requests with an id, version 1 peers only need to skip this peer
+        HashSet<PeerDTO> visited = new HashSet<>();
+        visited.add(new PeerDTO(peer.getIp(), peer.getPort()));
+        return visited;
+    }
+
+    private String requestTag(long requestId, Collection<PeerDTO> visited) { // :rid=x, or :visited=ip:port,... for a legacy request without an id
+        return requestId != 0 ? ":rid=" + Long.toHexString(requestId) : ":visited=" + encodeVisited(visited);
+    }
+
+    private String encodeVisited(Collection<PeerDTO> visited) { // ip:port,...
+        StringBuilder visitedInfo = new StringBuilder();
+        for (PeerDTO v : visited) {
+            if (!visitedInfo.isEmpty()) {
+                visitedInfo.append(",");
+            }
+            visitedInfo.append(v.ip()).append(":").append(v.port());
+        }
+        return visitedInfo.toString();
+    }
+
+    private List<String> encodeRanges(List<Integer> indices) {
+        return encodeRanges(indices.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private List<String> encodeRanges(int[] indices) { // a-b,c,d-e
+        List<String> packets = new ArrayList<>();
+        StringBuilder ranges = new StringBuilder();
+
+        for (List<WireCodec.Range> runs : WireCodec.toRanges(indices, Integer.MAX_VALUE)) {
+            for (WireCodec.Range run : runs) {
+                String range = run.start() == run.end() ? String.valueOf(run.start()) : run.start() + "-" + run.end();
+                if (ranges.length() + range.length() + 1 > MAX_RANGES_LENGTH) {
+                    packets.add(ranges.toString());
+                    ranges.setLength(0);
+                }
+                if (!ranges.isEmpty()) {
+                    ranges.append(",");
                 }
+                ranges.append(range);
             }
+        }
 
-            if (ttl == 1) {
-                return;
+        if (!ranges.isEmpty()) {
+            packets.add(ranges.toString());
+        }
+        return packets;
+    }
+
+    private int[] decodeRanges(String ranges, int chunkCount) throws IOException { // same bounds as WireCodec.readIndices
+        IntStream.Builder indices = IntStream.builder();
+        int total = 0;
+        for (String range : ranges.split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            int start;
+            int end;
+            try {
+                start = Integer.parseInt(dash == -1 ? range : range.substring(0, dash));
+                end = dash == -1 ? start : Integer.parseInt(range.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk range: " + range, e);
+            }
+            if (start < 0 || start > end || end >= chunkCount || total + (end - start + 1) > chunkCount) {
+                throw new IOException("Invalid chunk range: " + range + " for " + chunkCount + " chunks");
+            }
+            total += end - start + 1;
+            for (int index = start; index <= end; index++) {
+                indices.add(index);
             }
+        }
+        return indices.build().toArray();
+    }
+
+    public void sendBitfieldRequest(FileId hash, Collection<PeerDTO> targets) throws IOException { // BITFIELD_REQUEST:hash=x
+        ByteBuffer text = ByteBuffer.wrap(("BITFIELD_REQUEST:hash=" + hash).getBytes());
+        ByteBuffer binary = WireCodec.encodeBitfieldRequest(WireCodec.buffer(), hash);
 
-            spreadChunkRequest(fileHash, index, ip, port, ttl - 1, visited);
+        try {
+            for (PeerDTO target : targets) {
+                sendPacket(speaksBinary(target) ? binary : text, target.ip(), target.port());
+            }
+        } finally {
+            WireCodec.release(binary);
         }
+    }
 
-        peer.addPeer(new PeerDTO(ip, port));
+    private void handleBitfieldRequest(FileId hash, PeerDTO requester) throws IOException {
+        ChunkIdArray chunks = peer.getOwnedChunks().get(hash);
+        if (chunks == null) {
+            return;
+        }
+
+        ChunkAvailability.getInstance().subscribe(hash, requester);
+
+        ChunkBitmap owned = chunks.bitmap();
+        if (owned.isEmpty()) {
+            return;
+        }
+
+        if (owned.isComplete()) {
+            if (speaksBinary(requester)) {
+                sendAndRelease(WireCodec.encodeBitfield(WireCodec.buffer(), hash, owned.length(), WireCodec.BITFIELD_COMPLETE, 0, new byte[0]), requester.ip(), requester.port());
+            }
+            else {
+                sendPacket(("BITFIELD:hash=" + hash + ":chunkCount=" + owned.length() + ":complete=1").getBytes(), requester.ip(), requester.port());
+            }
+            return;
+        }
+
+        byte[] bits = owned.toByteArray();
+        for (int offset = 0; offset < bits.length; offset += WireCodec.MAX_BITFIELD_BYTES) {
+            if (owned.cardinality(offset * 8, Math.min((offset + WireCodec.MAX_BITFIELD_BYTES) * 8, owned.length())) == 0) {
+                continue;
+            }
+
+            byte[] fragment = Arrays.copyOfRange(bits, offset, Math.min(offset + WireCodec.MAX_BITFIELD_BYTES, bits.length));
+            if (speaksBinary(requester)) {
+                sendAndRelease(WireCodec.encodeBitfield(WireCodec.buffer(), hash, owned.length(), (byte) 0, offset * 8, fragment), requester.ip(), requester.port());
+            }
+            else {
+                String message = "BITFIELD:hash=" + hash + ":chunkCount=" + owned.length() + ":from=" + offset * 8 + ":bits=" + Base64.getEncoder().encodeToString(fragment);
+                sendPacket(message.getBytes(), requester.ip(), requester.port());
+            }
+        }
+    }
+
+    private void bitfieldHandler(DatagramPacket packet, String message) { // BITFIELD:hash=x:chunkCount=x:complete=1 or BITFIELD:hash=x:chunkCount=x:from=x:bits=base64
+        String[] parts = message.split(":");
+        FileId hash = FileId.fromHex(getField(parts, "hash"));
+        int chunkCount = Integer.parseInt(getField(parts, "chunkCount"));
+
+        if (getField(parts, "complete").equals("1")) {
+            ChunkAvailability.getInstance().completeReceived(hash, senderOf(packet), chunkCount);
+        }
+        else {
+            ChunkAvailability.getInstance().bitfieldReceived(hash, senderOf(packet), chunkCount, Integer.parseInt(getField(parts, "from")), Base64.getDecoder().decode(getField(parts, "bits")));
+        }
+    }
+
+    private void binaryBitfieldHandler(ByteBuffer in, PeerDTO sender) throws IOException { // [fileHash, chunkCount, flags, fromIndex, bits]
+        FileId hash = WireCodec.readFileId(in);
+        int chunkCount = in.getInt();
+        byte flags = in.get();
+        int fromIndex = in.getInt();
+
+        if ((flags & WireCodec.BITFIELD_COMPLETE) != 0) {
+            ChunkAvailability.getInstance().completeReceived(hash, sender, chunkCount);
+        }
+        else {
+            ChunkAvailability.getInstance().bitfieldReceived(hash, sender, chunkCount, fromIndex, WireCodec.readBytes(in));
+        }
+    }
+
+    public void sendHave(FileId hash, int chunkCount, int index, Collection<PeerDTO> targets) throws IOException { // HAVE:hash=x:chunkCount=x:index=x
+        ByteBuffer text = ByteBuffer.wrap(("HAVE:hash=" + hash + ":chunkCount=" + chunkCount + ":index=" + index).getBytes());
+        ByteBuffer binary = WireCodec.encodeHave(WireCodec.buffer(), hash, chunkCount, index);
+
+        try {
+            for (PeerDTO target : targets) {
+                sendPacket(speaksBinary(target) ? binary : text, target.ip(), target.port());
+            }
+        } finally {
+            WireCodec.release(binary);
+        }
     }
 
     protected void sendFriendRequest(String ip, int port) throws IOException {
+        if (speaksBinary(new PeerDTO(ip, port))) {
+            sendAndRelease(WireCodec.encodeEmpty(WireCodec.buffer(), WireCodec.FRIEND_REQUEST), ip, port);
+            System.out.println("Friend request sent to: " + ip + ":" + port + " (binary)");
+            return;
+        }
+
         String message = "FRIEND_REQUEST";
         byte[] data = message.getBytes();
 
         sendPacket(data, ip, port);
+        sendWireHello(ip, port);
         System.out.println("Friend request sent to: " + ip + ":" + port + " (" + message + ")");
     }
 
@@ -189,56 +849,63 @@ public class UdpSocketHandler {
         }
     }
 
-    private void fileNotificationHandler(DatagramPacket packet) throws IOException { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx
+    private void fileNotificationHandler(DatagramPacket packet) throws IOException { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
         String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
         String[] parts = message.split(":");
-        String filename = parts[1].split("=")[1];
-        String fileType = parts[2].split("=")[1];
-        int fileSize = Integer.parseInt(parts[3].split("=")[1]);
+        String filename = WireCodec.unescapeField(parts[1].split("=")[1]);
+        String fileType = WireCodec.unescapeField(parts[2].split("=", -1)[1]);
+        long fileSize = Long.parseLong(parts[3].split("=")[1]);
         int chunkCount = Integer.parseInt(parts[4].split("=")[1]);
-        String hash = parts[5].split("=")[1];
+        FileId hash = FileId.fromHex(parts[5].split("=")[1]);
         String ip = parts[6].split("=")[1];
         int port = Integer.parseInt(parts[7].split("=")[1]);
+        int chunkSize = parts.length > 8 ? Integer.parseInt(parts[8].split("=")[1]) : FileManager.DEFAULT_CHUNK_SIZE;
+        String merkleRoot = parts.length > 9 ? parts[9].substring(parts[9].indexOf('=') + 1) : "";
 
-        if (peer.getFiles().containsKey(hash) || peer.getUploadedFiles().containsKey(hash)) {
+        handleFileNotification(new FileDTO(filename, fileType, fileSize, chunkSize, chunkCount, hash, new PeerDTO(ip, port), null, merkleRoot));
+    }
+
+    private void binaryFileNotificationHandler(ByteBuffer in) throws IOException { // [event, filename, fileType, fileSize, chunkCount, hash, ip, port, chunkSize, merkleRoot]
+        in.get();
+        handleFileNotification(WireCodec.readFileNotification(in));
+    }
+
+    private void handleFileNotification(FileDTO file) {
+        if (peer.getFiles().containsKey(file.hash()) || peer.getUploadedFiles().containsKey(file.hash())) {
             return;
         }
 
-        FileDTO file = new FileDTO(filename, fileType, fileSize, chunkCount, hash, new PeerDTO(ip, port), null);
-
-        peer.addFiles(hash, file);
+        peer.addFiles(file.hash(), file);
     }
 
     private void sendFilesInfoForNewPeer(PeerDTO requesterPeer) throws IOException {
-        for (String fileHash : peer.getUploadedFiles().keySet()) {
-            String notify = "filename=" + peer.getUploadedFiles().get(fileHash).filename() +
-                    ":fileType=" + peer.getUploadedFiles().get(fileHash).fileType() +
-                    ":fileSize=" + peer.getUploadedFiles().get(fileHash).fileSize() +
-                    ":chunkCount=" + peer.getUploadedFiles().get(fileHash).chunkCount() +
-                    ":hash=" + fileHash +
-                    ":ip=" + peer.getUploadedFiles().get(fileHash).owner().ip() +
-                    ":port=" + peer.getUploadedFiles().get(fileHash).owner().port();
-
-            sendFileNotification(notify, requesterPeer);
+        for (FileDTO file : peer.getUploadedFilesSnapshot().values()) {
+            sendFileNotification(file, requesterPeer);
         }
 
-        for (String fileHash : peer.getFiles().keySet()) {
-            String notify = "filename=" + peer.getFiles().get(fileHash).filename() +
-                    ":fileType=" + peer.getFiles().get(fileHash).fileType() +
-                    ":fileSize=" + peer.getFiles().get(fileHash).fileSize() +
-                    ":chunkCount=" + peer.getFiles().get(fileHash).chunkCount() +
-                    ":hash=" + fileHash +
-                    ":ip=" + peer.getFiles().get(fileHash).owner().ip() +
-                    ":port=" + peer.getFiles().get(fileHash).owner().port();
-
-            sendFileNotification(notify, requesterPeer);
+        for (FileDTO file : peer.getFilesSnapshot().values()) {
+            sendFileNotification(file, requesterPeer);
         }
     }
 
-    private void sendFileNotification(String notify, PeerDTO peer) throws IOException { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx
+    private void sendFileNotification(FileDTO file, PeerDTO peer) throws IOException { // FILE_NOTIFICATION:filename=x:fileType=x:fileSize=x:chunkCount=x:hash=x:ip=x.x.x.x:port=xxxx:chunkSize=x:merkleRoot=x
+        if (speaksBinary(peer)) {
+            System.out.println("Sending file notification: (" + file.filename() + ", binary)");
+            sendAndRelease(WireCodec.encodeFileNotification(WireCodec.buffer(), WireCodec.EVENT_NONE, file), peer.ip(), peer.port());
+            return;
+        }
 
-        String message = "FILE_NOTIFICATION:" + notify;
+        String message = "FILE_NOTIFICATION:" +
+                "filename=" + WireCodec.escapeField(file.filename()) +
+                ":fileType=" + WireCodec.escapeField(file.fileType()) +
+                ":fileSize=" + file.fileSize() +
+                ":chunkCount=" + file.chunkCount() +
+                ":hash=" + file.hash() +
+                ":ip=" + file.owner().ip() +
+                ":port=" + file.owner().port() +
+                ":chunkSize=" + file.chunkSize() +
+                ":merkleRoot=" + file.merkleRoot();
 
         byte[] data = message.getBytes();
 
@@ -248,11 +915,16 @@ public class UdpSocketHandler {
     }
 
     protected void sendFileRequest(PeerDTO peer) throws IOException {
+        System.out.println("Sending file info request to: " + peer.ip() + ":" + peer.port());
+
+        if (speaksBinary(peer)) {
+            sendAndRelease(WireCodec.encodeEmpty(WireCodec.buffer(), WireCodec.FILE_INFO_REQUEST), peer.ip(), peer.port());
+            return;
+        }
+
         String message = "FILE_INFO_REQUEST";
         byte[] data = message.getBytes();
 
-        System.out.println("Sending file info request to: " + peer.ip() + ":" + peer.port());
-
         sendPacket(data, peer.ip(), peer.port());
     }
 
@@ -260,6 +932,22 @@ public class UdpSocketHandler {
         return udpSocket;
     }
 
+    public void sendWirePacket(ByteBuffer data, PeerDTO target) throws IOException {
+        sendAndRelease(data, target.ip(), target.port());
+    }
+
+    private void sendAndRelease(ByteBuffer data, String ip, int port) throws IOException {
+        try {
+            sendPacket(data, ip, port);
+        } finally {
+            WireCodec.release(data);
+        }
+    }
+
+    private void sendPacket(ByteBuffer data, String ip, int port) throws IOException { // sends position..limit, the buffer is left untouched for the next target
+        getSocket().send(new DatagramPacket(data.array(), data.arrayOffset() + data.position(), data.remaining(), InetAddress.getByName(ip), port));
+    }
+
     private void sendPacket(byte [] data, String ip, int port) throws IOException {
         DatagramPacket packet = new DatagramPacket(
                 data,
@@ -0,0 +1,462 @@
+package app.socketHandler;
+
+import app.dht.Contact;
+import app.dht.NodeId;
+import app.dto.FileDTO;
+import app.dto.FileId;
+import app.dto.PeerDTO;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class WireCodec { // [short magic, byte version, byte type][fields...], addresses are [byte length, raw bytes], strings are [short length, utf-8], encoders return the buffer flipped for sending
+    public static final short MAGIC = 0x5057;
+    public static final byte VERSION = 2;
+    public static final byte REQUEST_ID_VERSION = 2;
+    public static final int MAX_PACKET = 1024;
+    public static final int HEADER_LENGTH = 4;
+
+    public static final byte CHUNK_REQUEST = 1;
+    public static final byte CHUNK_BATCH_REQUEST = 2;
+    public static final byte CHUNK_CANCEL = 3;
+    public static final byte FRIEND_REQUEST = 4;
+    public static final byte FILE_NOTIFICATION = 5;
+    public static final byte FILE_INFO_REQUEST = 6;
+    public static final byte BOOTSTRAP_REQUEST = 7;
+    public static final byte BITFIELD_REQUEST = 8;
+    public static final byte BITFIELD = 9;
+    public static final byte HAVE = 10;
+    public static final byte DHT_PING = 11;
+    public static final byte DHT_PONG = 12;
+    public static final byte DHT_FIND_NODE = 13;
+    public static final byte DHT_NODES = 14;
+    public static final byte DHT_FIND_VALUE = 15;
+    public static final byte DHT_VALUES = 16;
+    public static final byte DHT_STORE = 17;
+
+    public static final byte EVENT_NONE = 0;
+    public static final byte EVENT_CREATE = 1;
+    public static final byte EVENT_DELETE = 2;
+
+    public static final int MAX_RANGES = 64;
+    public static final int MAX_CHUNK_INDEX = 1 << 20;
+    public static final int MAX_BITFIELD_BYTES = 512;
+    public static final byte BITFIELD_COMPLETE = 1;
+    static final int PEER_LENGTH = 1 + 16 + 2;
+    static final int POOL_SIZE = 64;
+
+    private static final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public record Range(int start, int end) {}
+
+    public static ByteBuffer buffer() { // pooled, whoever sends the message last hands it back with release()
+        ByteBuffer out = pool.poll();
+        return out != null ? out.clear() : ByteBuffer.allocate(MAX_PACKET);
+    }
+
+    public static void release(ByteBuffer out) {
+        if (out.capacity() == MAX_PACKET && out.hasArray()) {
+            pool.offer(out);
+        }
+    }
+
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        return length >= HEADER_LENGTH && (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF)) == MAGIC;
+    }
+
+    public static int readVersion(ByteBuffer in) {
+        return in.get(in.position() + 2);
+    }
+
+    public static byte readType(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_LENGTH || in.getShort() != MAGIC) {
+            throw new IOException("Not a binary wire message");
+        }
+        int version = in.get();
+        if (version < 1) {
+            throw new IOException("Unsupported wire version: " + version);
+        }
+        return in.get();
+    }
+
+    public static ByteBuffer encodeChunkRequest(ByteBuffer out, int version, FileId fileHash, int index, String ip, int port, int ttl, long requestId, Collection<PeerDTO> visited) throws IOException {
+        writeHeader(out, CHUNK_REQUEST, version);
+        writeFileId(out, fileHash);
+        out.putInt(index);
+        writeAddress(out, ip);
+        out.putShort((short) port);
+        out.put((byte) ttl);
+        writeRequestId(out, version, requestId, visited);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeChunkBatchRequest(ByteBuffer out, int version, FileId fileHash, List<Range> ranges, String ip, int port, int ttl, byte codecs, long requestId, Collection<PeerDTO> visited) throws IOException {
+        writeHeader(out, CHUNK_BATCH_REQUEST, version);
+        writeFileId(out, fileHash);
+        writeRanges(out, ranges);
+        writeAddress(out, ip);
+        out.putShort((short) port);
+        out.put((byte) ttl);
+        out.put(codecs);
+        writeRequestId(out, version, requestId, visited);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeChunkCancel(ByteBuffer out, FileId fileHash, List<Range> ranges, String ip) throws IOException {
+        writeHeader(out, CHUNK_CANCEL);
+        writeFileId(out, fileHash);
+        writeRanges(out, ranges);
+        writeAddress(out, ip);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeEmpty(ByteBuffer out, byte type) {
+        writeHeader(out, type);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeFileNotification(ByteBuffer out, byte event, FileDTO file) throws IOException {
+        writeHeader(out, FILE_NOTIFICATION);
+        out.put(event);
+        writeString(out, file.filename());
+        writeString(out, file.fileType());
+        out.putLong(file.fileSize());
+        out.putInt(file.chunkCount());
+        writeFileId(out, file.hash());
+        writeAddress(out, file.owner().ip());
+        out.putShort((short) file.owner().port());
+        out.putInt(file.chunkSize());
+        if (file.merkleRoot() == null || file.merkleRoot().isEmpty()) {
+            out.put((byte) 0);
+        }
+        else {
+            byte[] root = HexFormat.of().parseHex(file.merkleRoot());
+            out.put((byte) root.length);
+            out.put(root);
+        }
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeBootstrapRequest(ByteBuffer out, String ip, int port) throws IOException {
+        writeHeader(out, BOOTSTRAP_REQUEST);
+        writeAddress(out, ip);
+        out.putShort((short) port);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeBitfieldRequest(ByteBuffer out, FileId fileHash) {
+        writeHeader(out, BITFIELD_REQUEST);
+        writeFileId(out, fileHash);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeBitfield(ByteBuffer out, FileId fileHash, int chunkCount, byte flags, int fromIndex, byte[] bits) {
+        writeHeader(out, BITFIELD);
+        writeFileId(out, fileHash);
+        out.putInt(chunkCount);
+        out.put(flags);
+        out.putInt(fromIndex);
+        out.putShort((short) bits.length);
+        out.put(bits);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeHave(ByteBuffer out, FileId fileHash, int chunkCount, int index) {
+        writeHeader(out, HAVE);
+        writeFileId(out, fileHash);
+        out.putInt(chunkCount);
+        out.putInt(index);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeDht(ByteBuffer out, byte type, long rpcId, NodeId sender) { // [rpcId, senderId]
+        writeDht(out, type, rpcId, sender);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeDhtKey(ByteBuffer out, byte type, long rpcId, NodeId sender, NodeId key) { // [rpcId, senderId, key]
+        writeDht(out, type, rpcId, sender);
+        writeNodeId(out, key);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeDhtNodes(ByteBuffer out, long rpcId, NodeId sender, List<Contact> contacts) throws IOException { // [rpcId, senderId, count, (id, ip, port)...]
+        writeDht(out, DHT_NODES, rpcId, sender);
+        int countPosition = out.position();
+        out.put((byte) 0);
+
+        int count = 0;
+        for (Contact contact : contacts) {
+            if (out.remaining() < NodeId.BITS / 8 + PEER_LENGTH) {
+                break;
+            }
+            writeNodeId(out, contact.id());
+            writeAddress(out, contact.peer().ip());
+            out.putShort((short) contact.peer().port());
+            count++;
+        }
+        out.put(countPosition, (byte) count);
+        return out.flip();
+    }
+
+    public static ByteBuffer encodeDhtValues(ByteBuffer out, long rpcId, NodeId sender, Collection<PeerDTO> holders) throws IOException { // [rpcId, senderId, count, (ip, port)...]
+        writeDht(out, DHT_VALUES, rpcId, sender);
+        writePeers(out, holders);
+        return out.flip();
+    }
+
+    public static NodeId readNodeId(ByteBuffer in) {
+        return new NodeId(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+    }
+
+    public static List<Contact> readContacts(ByteBuffer in) throws IOException {
+        int count = Byte.toUnsignedInt(in.get());
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            NodeId id = readNodeId(in);
+            contacts.add(new Contact(id, new PeerDTO(readAddress(in), readPort(in))));
+        }
+        return contacts;
+    }
+
+    public static FileId readFileId(ByteBuffer in) {
+        return new FileId(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+    }
+
+    public static String readAddress(ByteBuffer in) throws IOException {
+        int length = in.get();
+        if (length != 4 && length != 16) {
+            throw new IOException("Invalid address length: " + length);
+        }
+        if (length == 4) { // dotted quad straight from the buffer, no InetAddress round trip
+            return Byte.toUnsignedInt(in.get()) + "." + Byte.toUnsignedInt(in.get()) + "." + Byte.toUnsignedInt(in.get()) + "." + Byte.toUnsignedInt(in.get());
+        }
+        byte[] address = new byte[length];
+        in.get(address);
+        return InetAddress.getByAddress(address).getHostAddress();
+    }
+
+    public static int readPort(ByteBuffer in) {
+        return Short.toUnsignedInt(in.getShort());
+    }
+
+    public static String readString(ByteBuffer in) throws IOException {
+        int length = readLength(in, Short.toUnsignedInt(in.getShort()));
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    public static byte[] readBytes(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readLength(in, Short.toUnsignedInt(in.getShort()))];
+        in.get(bytes);
+        return bytes;
+    }
+
+    public static String readMerkleRoot(ByteBuffer in) throws IOException {
+        int length = readLength(in, in.get());
+        if (length == 0) {
+            return "";
+        }
+        String root = HexFormat.of().formatHex(in.array(), in.arrayOffset() + in.position(), in.arrayOffset() + in.position() + length);
+        in.position(in.position() + length);
+        return root;
+    }
+
+    public static FileDTO readFileNotification(ByteBuffer in) throws IOException {
+        String filename = readString(in);
+        String fileType = readString(in);
+        long fileSize = in.getLong();
+        int chunkCount = in.getInt();
+        FileId hash = readFileId(in);
+        String ip = readAddress(in);
+        int port = readPort(in);
+        int chunkSize = in.getInt();
+        String merkleRoot = readMerkleRoot(in);
+
+        return new FileDTO(filename, fileType, fileSize, chunkSize, chunkCount, hash, new PeerDTO(ip, port), null, merkleRoot);
+    }
+
+    public static int[] readIndices(ByteBuffer in, int chunkCount) throws IOException { // every index must be below chunkCount, and so must the total
+        int count = Short.toUnsignedInt(in.getShort());
+        int rangesStart = in.position();
+        readLength(in, count * 2 * Integer.BYTES);
+
+        long total = 0;
+        for (int i = 0; i < count; i++) { // validate and size first, then fill in a second pass
+            int start = in.getInt(rangesStart + i * 2 * Integer.BYTES);
+            int end = in.getInt(rangesStart + i * 2 * Integer.BYTES + Integer.BYTES);
+            if (start < 0 || start > end || end >= chunkCount || total + (end - start + 1) > chunkCount) {
+                throw new IOException("Invalid chunk range: " + start + "-" + end + " for " + chunkCount + " chunks");
+            }
+            total += end - start + 1;
+        }
+
+        int[] indices = new int[(int) total];
+        int filled = 0;
+        for (int i = 0; i < count; i++) {
+            int start = in.getInt();
+            int end = in.getInt();
+            for (int index = start; index <= end; index++) {
+                indices[filled++] = index;
+            }
+        }
+        return indices;
+    }
+
+    public static long readRequestId(ByteBuffer in, int version) { // 0 for version 1 messages, which carry a visited list instead
+        return version >= REQUEST_ID_VERSION ? in.getLong() : 0;
+    }
+
+    public static List<PeerDTO> readVisited(ByteBuffer in, int version) throws IOException {
+        return version >= REQUEST_ID_VERSION ? List.of() : readPeers(in);
+    }
+
+    public static List<PeerDTO> readPeers(ByteBuffer in) throws IOException {
+        int count = Byte.toUnsignedInt(in.get());
+        List<PeerDTO> peers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            peers.add(new PeerDTO(readAddress(in), readPort(in)));
+        }
+        return peers;
+    }
+
+    public static List<List<Range>> toRanges(List<Integer> indices, int maxRangesPerPacket) {
+        return toRanges(indices.stream().mapToInt(Integer::intValue).toArray(), maxRangesPerPacket);
+    }
+
+    public static List<List<Range>> toRanges(int[] indices, int maxRangesPerPacket) {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+
+        List<List<Range>> packets = new ArrayList<>();
+        List<Range> ranges = new ArrayList<>();
+
+        int i = 0;
+        while (i < sorted.length) {
+            int start = sorted[i];
+            int end = start;
+            while (i + 1 < sorted.length && sorted[i + 1] <= end + 1) {
+                end = sorted[++i];
+            }
+            i++;
+
+            if (ranges.size() == maxRangesPerPacket) {
+                packets.add(ranges);
+                ranges = new ArrayList<>();
+            }
+            ranges.add(new Range(start, end));
+        }
+
+        if (!ranges.isEmpty()) {
+            packets.add(ranges);
+        }
+        return packets;
+    }
+
+    private static int readLength(ByteBuffer in, int length) throws IOException {
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid field length: " + length + " (" + in.remaining() + " bytes left)");
+        }
+        return length;
+    }
+
+    public static String escapeField(String value) { // for free text inside the ':'-separated text messages, '%' first so it round-trips
+        return value.replace("%", "%25").replace(":", "%3A").replace("=", "%3D");
+    }
+
+    public static String unescapeField(String value) {
+        return value.replace("%3D", "=").replace("%3A", ":").replace("%25", "%");
+    }
+
+    public static IOException malformed(BufferUnderflowException e) {
+        return new IOException("Truncated wire message", e);
+    }
+
+    private static void writeHeader(ByteBuffer out, byte type) {
+        writeHeader(out, type, VERSION);
+    }
+
+    private static void writeHeader(ByteBuffer out, byte type, int version) {
+        out.putShort(MAGIC);
+        out.put((byte) version);
+        out.put(type);
+    }
+
+    private static void writeDht(ByteBuffer out, byte type, long rpcId, NodeId sender) {
+        writeHeader(out, type);
+        out.putLong(rpcId);
+        writeNodeId(out, sender);
+    }
+
+    private static void writeFileId(ByteBuffer out, FileId fileId) {
+        out.putLong(fileId.h0());
+        out.putLong(fileId.h1());
+        out.putLong(fileId.h2());
+        out.putLong(fileId.h3());
+    }
+
+    private static void writeNodeId(ByteBuffer out, NodeId id) {
+        out.putLong(id.h0());
+        out.putLong(id.h1());
+        out.putLong(id.h2());
+        out.putLong(id.h3());
+    }
+
+    private static void writeAddress(ByteBuffer out, String ip) throws IOException {
+        byte[] address = InetAddress.getByName(ip).getAddress();
+        out.put((byte) address.length);
+        out.put(address);
+    }
+
+    private static void writeString(ByteBuffer out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + Short.BYTES > out.remaining()) {
+            throw new IOException("Field too long for a wire message: " + value);
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static void writeRanges(ByteBuffer out, List<Range> ranges) {
+        out.putShort((short) ranges.size());
+        for (Range range : ranges) {
+            out.putInt(range.start());
+            out.putInt(range.end());
+        }
+    }
+
+    private static void writeRequestId(ByteBuffer out, int version, long requestId, Collection<PeerDTO> visited) throws IOException {
+        if (version >= REQUEST_ID_VERSION) {
+            out.putLong(requestId);
+        }
+        else {
+            writePeers(out, visited);
+        }
+    }
+
+    private static void writePeers(ByteBuffer out, Collection<PeerDTO> peers) throws IOException {
+        int countPosition = out.position();
+        out.put((byte) 0);
+
+        int count = 0;
+        for (PeerDTO peer : peers) {
+            if (count == 255 || out.remaining() < PEER_LENGTH) {
+                break;
+            }
+            writeAddress(out, peer.ip());
+            out.putShort((short) peer.port());
+            count++;
+        }
+        out.put(countPosition, (byte) count);
+    }
+}
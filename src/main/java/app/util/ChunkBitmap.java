@@ -0,0 +1,161 @@
+package app.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ChunkBitmap { // bit i of words[i >> 6] is chunk i, cardinality is kept up to date on every change
+    private final long[] words;
+    private final int length;
+    private int cardinality;
+
+    public ChunkBitmap(int length) {
+        this.length = length;
+        this.words = new long[(length + 63) >>> 6];
+    }
+
+    private ChunkBitmap(ChunkBitmap other) {
+        this.length = other.length;
+        this.words = other.words.clone();
+        this.cardinality = other.cardinality;
+    }
+
+    public ChunkBitmap copy() {
+        return new ChunkBitmap(this);
+    }
+
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean set(int index) {
+        long mask = 1L << index;
+        long word = words[index >>> 6];
+        if ((word & mask) != 0) {
+            return false;
+        }
+        words[index >>> 6] = word | mask;
+        cardinality++;
+        return true;
+    }
+
+    public boolean clear(int index) {
+        long mask = 1L << index;
+        long word = words[index >>> 6];
+        if ((word & mask) == 0) {
+            return false;
+        }
+        words[index >>> 6] = word & ~mask;
+        cardinality--;
+        return true;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public int cardinality(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+
+        if (first == last) {
+            return Long.bitCount(words[first] & firstMask & lastMask);
+        }
+
+        int count = Long.bitCount(words[first] & firstMask);
+        for (int i = first + 1; i < last; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count + Long.bitCount(words[last] & lastMask);
+    }
+
+    public boolean isRangeSet(int from, int to) {
+        return cardinality(from, to) == to - from;
+    }
+
+    public int nextSetBit(int from) {
+        if (from >= length) {
+            return -1;
+        }
+
+        int u = from >>> 6;
+        long word = words[u] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (u << 6) + Long.numberOfTrailingZeros(word);
+                return index < length ? index : -1;
+            }
+            if (++u == words.length) {
+                return -1;
+            }
+            word = words[u];
+        }
+    }
+
+    public int nextClearBit(int from) {
+        if (from >= length) {
+            return -1;
+        }
+
+        int u = from >>> 6;
+        long word = ~words[u] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (u << 6) + Long.numberOfTrailingZeros(word);
+                return index < length ? index : -1;
+            }
+            if (++u == words.length) {
+                return -1;
+            }
+            word = ~words[u];
+        }
+    }
+
+    public boolean isComplete() {
+        return cardinality == length;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+        byte[] bytes = new byte[(length + 7) >>> 3];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    public static ChunkBitmap fromByteArray(byte[] bytes, int length) {
+        ChunkBitmap bitmap = new ChunkBitmap(length);
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes, 0, Math.min(bytes.length, buffer.capacity())).clear();
+
+        for (int i = 0; i < bitmap.words.length; i++) {
+            bitmap.words[i] = buffer.getLong();
+        }
+        if ((length & 63) != 0 && bitmap.words.length > 0) {
+            bitmap.words[bitmap.words.length - 1] &= -1L >>> -length;
+        }
+        for (long word : bitmap.words) {
+            bitmap.cardinality += Long.bitCount(word);
+        }
+        return bitmap;
+    }
+
+    public String toString() {
+        return cardinality + "/" + length;
+    }
+}
@@ -0,0 +1,106 @@
+package app.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class ChunkCompression {
+
+    public static final byte NONE = 0;
+    public static final byte DEFLATE = 1;
+    public static final String DEFLATE_NAME = "deflate";
+
+    static final Set<String> COMPRESSIBLE_TYPES = Set.of("pdf", "txt", "csv", "log", "json", "xml", "html", "htm", "md", "rtf", "svg", "bmp", "wav", "tar", "doc", "xls", "ppt");
+    static final Set<String> COMPRESSED_TYPES = Set.of("mp3", "mp4", "m4a", "aac", "ogg", "flac", "mkv", "webm", "avi", "mov", "jpg", "jpeg", "png", "gif", "webp", "zip", "gz", "bz2", "xz", "7z", "rar", "jar", "docx", "xlsx", "pptx");
+
+    static final int SAMPLE_SIZE = 4096;
+    static final double MAX_SAMPLE_ENTROPY = 7.2;
+    static final double MIN_SAVING = 0.1;
+
+    public static boolean isWorthCompressing(String fileType, byte[] chunkData) {
+        String type = fileType.toLowerCase();
+        if (COMPRESSED_TYPES.contains(type)) {
+            return false;
+        }
+        if (COMPRESSIBLE_TYPES.contains(type)) {
+            return true;
+        }
+        return sampleEntropy(chunkData) < MAX_SAMPLE_ENTROPY;
+    }
+
+    public static boolean isCompressedType(String fileType) {
+        return COMPRESSED_TYPES.contains(fileType.toLowerCase());
+    }
+
+    public static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] buffer = new byte[data.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            if (!deflater.finished() || length > data.length * (1 - MIN_SAVING)) {
+                return null;
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] decompress(byte[] data, int rawSize) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] raw = new byte[rawSize];
+            int length = 0;
+            while (!inflater.finished() && length < rawSize) {
+                int inflated = inflater.inflate(raw, length, rawSize - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+
+            if (length != rawSize || !inflater.finished()) {
+                throw new IOException("Corrupt compressed chunk: expected " + rawSize + " bytes, got " + length);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static double sampleEntropy(byte[] data) {
+        int sampleSize = Math.min(SAMPLE_SIZE, data.length);
+        if (sampleSize == 0) {
+            return 0;
+        }
+
+        int[] counts = new int[256];
+        int step = Math.max(1, data.length / sampleSize);
+        int samples = 0;
+        for (int i = 0; i < data.length && samples < sampleSize; i += step, samples++) {
+            counts[data[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / samples;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+}
@@ -0,0 +1,86 @@
+package app.util;
+
+import app.dto.ChunkId;
+
+public class ChunkIdArray { // four longs per chunk, ownership is tracked separately in a bitmap, all access is guarded by this array
+    private final long[] words;
+    private final int length;
+    private final ChunkBitmap owned;
+
+    public ChunkIdArray(int length) {
+        this.length = length;
+        this.words = new long[length * 4];
+        this.owned = new ChunkBitmap(length);
+    }
+
+    public ChunkIdArray(ChunkId[] chunkIds) {
+        this(chunkIds.length);
+        for (int i = 0; i < chunkIds.length; i++) {
+            if (chunkIds[i] != null) {
+                store(i, chunkIds[i]);
+            }
+        }
+    }
+
+    public synchronized void set(int index, ChunkId chunkId) {
+        store(index, chunkId);
+    }
+
+    private void store(int index, ChunkId chunkId) {
+        int offset = index * 4;
+        words[offset] = chunkId.h0();
+        words[offset + 1] = chunkId.h1();
+        words[offset + 2] = chunkId.h2();
+        words[offset + 3] = chunkId.h3();
+        owned.set(index);
+    }
+
+    public synchronized void clear(int index) {
+        int offset = index * 4;
+        words[offset] = 0;
+        words[offset + 1] = 0;
+        words[offset + 2] = 0;
+        words[offset + 3] = 0;
+        owned.clear(index);
+    }
+
+    public synchronized boolean has(int index) {
+        return owned.get(index);
+    }
+
+    public synchronized ChunkId get(int index) {
+        if (!has(index)) {
+            return null;
+        }
+        int offset = index * 4;
+        return new ChunkId(words[offset], words[offset + 1], words[offset + 2], words[offset + 3]);
+    }
+
+    public synchronized int count() {
+        return owned.cardinality();
+    }
+
+    public synchronized boolean isEmpty() {
+        return owned.isEmpty();
+    }
+
+    public synchronized ChunkBitmap bitmap() {
+        return owned.copy();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public synchronized ChunkId[] toArray() {
+        ChunkId[] chunkIds = new ChunkId[length];
+        for (int i = 0; i < length; i++) {
+            chunkIds[i] = get(i);
+        }
+        return chunkIds;
+    }
+
+    public synchronized String toString() {
+        return count() + "/" + length;
+    }
+}
@@ -0,0 +1,82 @@
+package app.util;
+
+import app.dto.ChunkId;
+import app.dto.FileId;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+public class FileHasher {
+    public static final String ALGORITHM = "SHA-256";
+
+    private final Executor executor;
+    private final Semaphore inFlight;
+
+    public record Result(FileId fileHash, ChunkId[] chunkHashes) {}
+
+    public FileHasher(Executor executor, int maxInFlightChunks) {
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlightChunks);
+    }
+
+    public Result hash(File file, int chunkSize) throws IOException {
+        MessageDigest fileDigest = newDigest();
+        List<CompletableFuture<ChunkId>> chunkFutures = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long position = 0; position < size; position += chunkSize) {
+                byte[] chunk = new byte[(int) Math.min(chunkSize, size - position)];
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("File shrank while hashing: " + file);
+                    }
+                }
+
+                fileDigest.update(chunk);
+
+                inFlight.acquireUninterruptibly();
+                chunkFutures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ChunkId.of(newDigest().digest(chunk));
+                    } finally {
+                        inFlight.release();
+                    }
+                }, executor));
+            }
+        }
+
+        ChunkId[] chunkHashes = new ChunkId[chunkFutures.size()];
+        try {
+            for (int i = 0; i < chunkHashes.length; i++) {
+                chunkHashes[i] = chunkFutures.get(i).join();
+            }
+        } catch (CompletionException e) {
+            throw new IOException("Failed to hash chunks of " + file, e.getCause());
+        }
+
+        return new Result(FileId.of(fileDigest.digest()), chunkHashes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+}
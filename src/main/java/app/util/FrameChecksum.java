@@ -0,0 +1,116 @@
+package app.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
+
+public class FrameChecksum {
+    public static final byte NONE = 0;
+    public static final byte CRC32C = 1;
+    public static final byte XXH64 = 2;
+
+    static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    static final long PRIME64_3 = 0x165667B19E3779F9L;
+    static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    public static byte fromName(String name) {
+        return switch (name.toLowerCase()) {
+            case "none" -> NONE;
+            case "crc32c" -> CRC32C;
+            case "xxh64", "xxhash" -> XXH64;
+            default -> throw new IllegalArgumentException("Unknown checksum: " + name);
+        };
+    }
+
+    public static long compute(byte type, ByteBuffer data) {
+        return switch (type) {
+            case NONE -> 0;
+            case CRC32C -> crc32c(data);
+            case XXH64 -> xxh64(data, 0);
+            default -> throw new IllegalArgumentException("Unknown checksum type: " + type);
+        };
+    }
+
+    public static boolean matches(byte type, long expected, byte[] data) {
+        return type == NONE || compute(type, ByteBuffer.wrap(data)) == expected;
+    }
+
+    private static long crc32c(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    static long xxh64(ByteBuffer data, long seed) {
+        ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int p = buf.position();
+        int end = buf.limit();
+        int length = end - p;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+
+            int limit = end - 32;
+            do {
+                v1 = round(v1, buf.getLong(p));
+                v2 = round(v2, buf.getLong(p + 8));
+                v3 = round(v3, buf.getLong(p + 16));
+                v4 = round(v4, buf.getLong(p + 24));
+                p += 32;
+            } while (p <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        }
+        else {
+            h = seed + PRIME64_5;
+        }
+
+        h += length;
+
+        while (p + 8 <= end) {
+            h ^= round(0, buf.getLong(p));
+            h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+            p += 8;
+        }
+
+        if (p + 4 <= end) {
+            h ^= (buf.getInt(p) & 0xFFFFFFFFL) * PRIME64_1;
+            h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            p += 4;
+        }
+
+        while (p < end) {
+            h ^= (buf.get(p) & 0xFFL) * PRIME64_5;
+            h = Long.rotateLeft(h, 11) * PRIME64_1;
+            p++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+}
@@ -0,0 +1,117 @@
+package app.util;
+
+import app.dto.ChunkId;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class MerkleTree { // leaf = H(0x00 || chunkHash), node = H(0x01 || left || right), an odd last node is promoted
+    public static final int HASH_LENGTH = 32;
+    static final byte LEAF_PREFIX = 0x00;
+    static final byte NODE_PREFIX = 0x01;
+
+    private final byte[][][] levels;
+
+    private MerkleTree(byte[][][] levels) {
+        this.levels = levels;
+    }
+
+    public static MerkleTree build(ChunkIdArray chunkHashes) {
+        return build(chunkHashes.toArray());
+    }
+
+    public static MerkleTree build(ChunkId[] chunkHashes) {
+        if (chunkHashes.length == 0) {
+            return new MerkleTree(new byte[][][] { new byte[0][] });
+        }
+
+        int height = 1;
+        for (int size = chunkHashes.length; size > 1; size = (size + 1) / 2) {
+            height++;
+        }
+
+        byte[][][] levels = new byte[height][][];
+        levels[0] = new byte[chunkHashes.length][];
+        for (int i = 0; i < chunkHashes.length; i++) {
+            levels[0][i] = leaf(chunkHashes[i]);
+        }
+
+        for (int level = 1; level < height; level++) {
+            byte[][] below = levels[level - 1];
+            byte[][] nodes = new byte[(below.length + 1) / 2][];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = 2 * i + 1 < below.length ? node(below[2 * i], below[2 * i + 1]) : below[2 * i];
+            }
+            levels[level] = nodes;
+        }
+
+        return new MerkleTree(levels);
+    }
+
+    public String root() {
+        byte[][] top = levels[levels.length - 1];
+        return top.length == 0 ? "" : HexFormat.of().formatHex(top[0]);
+    }
+
+    public byte[] proof(int index) {
+        ByteArrayOutputStream proof = new ByteArrayOutputStream();
+        for (int level = 0; level < levels.length - 1; level++) {
+            int sibling = index ^ 1;
+            if (sibling < levels[level].length) {
+                proof.writeBytes(levels[level][sibling]);
+            }
+            index /= 2;
+        }
+        return proof.toByteArray();
+    }
+
+    public static boolean verify(String root, int index, int leafCount, ChunkId chunkHash, byte[] proof) {
+        if (index < 0 || index >= leafCount || proof.length % HASH_LENGTH != 0) {
+            return false;
+        }
+
+        byte[] current = leaf(chunkHash);
+        int offset = 0;
+
+        for (int size = leafCount; size > 1; size = (size + 1) / 2) {
+            int sibling = index ^ 1;
+            if (sibling < size) {
+                if (offset + HASH_LENGTH > proof.length) {
+                    return false;
+                }
+                byte[] siblingHash = new byte[HASH_LENGTH];
+                System.arraycopy(proof, offset, siblingHash, 0, HASH_LENGTH);
+                offset += HASH_LENGTH;
+                current = (index & 1) == 0 ? node(current, siblingHash) : node(siblingHash, current);
+            }
+            index /= 2;
+        }
+
+        return offset == proof.length && HexFormat.of().formatHex(current).equals(root);
+    }
+
+    private static byte[] leaf(ChunkId chunkHash) {
+        MessageDigest digest = newDigest();
+        digest.update(LEAF_PREFIX);
+        digest.update(chunkHash.toBytes());
+        return digest.digest();
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        MessageDigest digest = newDigest();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
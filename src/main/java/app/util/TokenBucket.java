@@ -0,0 +1,54 @@
+package app.util;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucket {
+    private long rate;
+    private long capacity;
+    private double tokens;
+    private long lastRefill;
+
+    final long MIN_BURST = 64 * 1024;
+
+    public TokenBucket(long rate) {
+        this.lastRefill = System.nanoTime();
+        this.rate = Math.max(0, rate);
+        this.capacity = Math.max(this.rate, MIN_BURST);
+    }
+
+    public synchronized void setRate(long rate) {
+        refill();
+        this.rate = Math.max(0, rate);
+        this.capacity = Math.max(this.rate, MIN_BURST);
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    public synchronized long reserve(long bytes) {
+        if (rate == 0) {
+            return 0;
+        }
+        refill();
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    public synchronized boolean isIdle(long idleNanos) { // unused for idleNanos and refilled to capacity, so a fresh bucket would behave the same
+        long elapsed = System.nanoTime() - lastRefill;
+        return elapsed > idleNanos && (rate == 0 || tokens + elapsed * rate / (double) TimeUnit.SECONDS.toNanos(1) >= capacity);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefill = now;
+    }
+}